@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2014 Andrei Varabyeu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.avarabyeu.wills;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Future completed once all input futures are successful, or failed with exception of first failed one.
+ * Lightweight alternative of {@link com.google.common.util.concurrent.Futures#allAsList(Iterable)} for large fan-in:
+ * there is no copy of inputs, one countdown field and one small listener per input only.
+ * Cancellation of aggregator is propagated to inputs. Cancellation of some input cancels aggregator only:
+ * like {@link com.google.common.util.concurrent.Futures#allAsList(Iterable)}, another inputs are left running
+ * since they may be shared with another consumers.
+ * Inputs are released once aggregator is completed, so they are not retained by the aggregated result
+ *
+ * @param <R> Type of aggregated result
+ * @author Andrei Varabyeu
+ */
+abstract class Aggregator<R> extends AbstractFuture<R> {
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<Aggregator> REMAINING =
+            AtomicIntegerFieldUpdater.newUpdater(Aggregator.class, "remaining");
+
+    private final int size;
+    private volatile ListenableFuture<?>[] inputs;
+    private volatile int remaining;
+
+    private Aggregator(ListenableFuture<?>[] inputs) {
+        this.inputs = inputs;
+        this.size = inputs.length;
+        this.remaining = inputs.length;
+    }
+
+    /**
+     * Aggregates results of inputs into list
+     */
+    static <A> Aggregator<List<A>> toList(ListenableFuture<? extends A>[] inputs) {
+        return new Aggregator<List<A>>(inputs) {
+            private final Object[] values = new Object[size()];
+
+            @Override
+            void collect(int index, Object value) {
+                values[index] = value;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            List<A> result() {
+                List<?> list = Collections.unmodifiableList(Arrays.asList(values));
+                return (List<A>) list;
+            }
+        }.start();
+    }
+
+    /**
+     * Just waits for inputs to complete, results are not collected
+     */
+    static Aggregator<Void> toVoid(ListenableFuture<?>[] inputs) {
+        return new Aggregator<Void>(inputs) {
+            @Override
+            void collect(int index, Object value) {
+                /* nothing to collect */
+            }
+
+            @Override
+            Void result() {
+                return null;
+            }
+        }.start();
+    }
+
+    /**
+     * Aggregates results of inputs into array of ints
+     */
+    static Aggregator<int[]> toInts(ListenableFuture<? extends Integer>[] inputs) {
+        return new Aggregator<int[]>(inputs) {
+            private final int[] values = new int[size()];
+
+            @Override
+            void collect(int index, Object value) {
+                values[index] = (Integer) value;
+            }
+
+            @Override
+            int[] result() {
+                return values;
+            }
+        }.start();
+    }
+
+    /**
+     * Aggregates results of inputs into array of longs
+     */
+    static Aggregator<long[]> toLongs(ListenableFuture<? extends Long>[] inputs) {
+        return new Aggregator<long[]>(inputs) {
+            private final long[] values = new long[size()];
+
+            @Override
+            void collect(int index, Object value) {
+                values[index] = (Long) value;
+            }
+
+            @Override
+            long[] result() {
+                return values;
+            }
+        }.start();
+    }
+
+    /**
+     * @return Number of inputs
+     */
+    final int size() {
+        return size;
+    }
+
+    /**
+     * Collects result of successful input. Called once per input, before countdown is decremented
+     *
+     * @param index Index of input
+     * @param value Result of input
+     */
+    abstract void collect(int index, Object value);
+
+    /**
+     * @return Aggregated result. Called once all inputs are collected
+     */
+    abstract R result();
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        ListenableFuture<?>[] toCancel = inputs;
+        if (!super.cancel(mayInterruptIfRunning)) {
+            return false;
+        }
+        release();
+        if (null != toCancel) {
+            for (ListenableFuture<?> input : toCancel) {
+                input.cancel(mayInterruptIfRunning);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Starts listening to inputs. Should be called once aggregator is constructed
+     *
+     * @return This aggregator
+     */
+    final Aggregator<R> start() {
+        /* inputs may be released by listener of already completed input */
+        ListenableFuture<?>[] toListen = inputs;
+        for (ListenableFuture<?> input : toListen) {
+            Preconditions.checkNotNull(input, "Will shouldn't be null");
+        }
+        if (0 == toListen.length) {
+            set(result());
+            return this;
+        }
+        for (int i = 0; i < toListen.length; i++) {
+            toListen[i].addListener(new Input(i, toListen[i]), MoreExecutors.directExecutor());
+        }
+        return this;
+    }
+
+    private void complete(int index, ListenableFuture<?> input) {
+        /* early exit: some input is already failed */
+        if (isDone()) {
+            return;
+        }
+        try {
+            collect(index, Uninterruptibles.getUninterruptibly(input));
+        } catch (ExecutionException e) {
+            setException(e.getCause());
+            release();
+            return;
+        } catch (CancellationException e) {
+            /* release inputs first, so cancellation is not propagated to them */
+            release();
+            super.cancel(false);
+            return;
+        } catch (RuntimeException e) {
+            setException(e);
+            release();
+            return;
+        }
+        if (0 == REMAINING.decrementAndGet(this)) {
+            set(result());
+            release();
+        }
+    }
+
+    private void release() {
+        inputs = null;
+    }
+
+    /**
+     * Listener of input completion
+     */
+    private final class Input implements Runnable {
+
+        private final int index;
+        private final ListenableFuture<?> future;
+
+        private Input(int index, ListenableFuture<?> future) {
+            this.index = index;
+            this.future = future;
+        }
+
+        @Override
+        public void run() {
+            complete(index, future);
+        }
+    }
+}
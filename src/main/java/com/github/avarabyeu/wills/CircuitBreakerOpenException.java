@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2014 Andrei Varabyeu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.avarabyeu.wills;
+
+/**
+ * Exception failed {@link Will} is created with when {@link WillCircuitBreaker} doesn't permit the call
+ *
+ * @author Andrei Varabyeu
+ */
+public class CircuitBreakerOpenException extends RuntimeException {
+
+    private final WillCircuitBreaker.State state;
+
+    public CircuitBreakerOpenException(WillCircuitBreaker.State state) {
+        super("Circuit breaker is " + state + ". Call is not permitted");
+        this.state = state;
+    }
+
+    /**
+     * @return State of circuit breaker at the moment call has been rejected
+     */
+    public WillCircuitBreaker.State getState() {
+        return state;
+    }
+}
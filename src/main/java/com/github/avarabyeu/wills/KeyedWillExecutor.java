@@ -0,0 +1,33 @@
+package com.github.avarabyeu.wills;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.Callable;
+
+/**
+ * Executor which executes tasks in context of some key. For example, applies per-tenant limits
+ *
+ * @param <K> Type of key
+ * @author Andrei Varabyeu
+ * @see WillExecutors#rateLimitedByKey(com.google.common.util.concurrent.ListeningExecutorService, double, int, int)
+ */
+public interface KeyedWillExecutor<K> {
+
+    /**
+     * Submits task in context of provided key
+     *
+     * @param key  Key of task
+     * @param task Task to be executed
+     * @return Will of task result
+     */
+    Will<?> submit(@Nonnull K key, @Nonnull Runnable task);
+
+    /**
+     * Submits task in context of provided key
+     *
+     * @param key  Key of task
+     * @param task Task to be executed
+     * @param <T>  Type of task result
+     * @return Will of task result
+     */
+    <T> Will<T> submit(@Nonnull K key, @Nonnull Callable<T> task);
+}
@@ -0,0 +1,438 @@
+/*
+ * Copyright (C) 2014 Andrei Varabyeu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.avarabyeu.wills;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.AbstractListeningExecutorService;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.SettableFuture;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executor service which submits tasks to delegate not faster than configured rate.
+ * Tasks exceeding the rate wait in queue without holding any thread and are released to the delegate
+ * as permits become available. Timer only hands release of queued tasks over to the delegate,
+ * so no task is dispatched from timer thread unless delegate itself runs tasks in calling thread.
+ * Once queue is full or executor is shut down, submit methods return failed {@link Will}
+ * with {@link java.util.concurrent.RejectedExecutionException}. Shutdown of executor shuts down the delegate
+ * once all queued tasks are released
+ *
+ * @author Andrei Varabyeu
+ */
+class RateLimitedWillExecutorService extends AbstractListeningExecutorService implements WillExecutorService {
+
+    private final ListeningExecutorService delegate;
+    private final ScheduledExecutorService timer;
+    private final TokenBucket bucket;
+    private final int maxQueued;
+
+    private final Queue<Task> queue = new ConcurrentLinkedQueue<Task>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+    private final Runnable releaseDrain = new Runnable() {
+        @Override
+        public void run() {
+            releaseDrain();
+        }
+    };
+
+    private volatile boolean shutdown;
+    private final AtomicBoolean delegateShutdown = new AtomicBoolean();
+    private final CountDownLatch drained = new CountDownLatch(1);
+
+    RateLimitedWillExecutorService(ListeningExecutorService delegate, ScheduledExecutorService timer,
+            double permitsPerSecond, int burst, int maxQueued) {
+        Preconditions.checkArgument(maxQueued >= 0, "Queue size shouldn't be negative");
+        this.delegate = Preconditions.checkNotNull(delegate, "Delegate shouldn't be null");
+        this.timer = Preconditions.checkNotNull(timer, "Timer shouldn't be null");
+        this.bucket = new TokenBucket(permitsPerSecond, burst);
+        this.maxQueued = maxQueued;
+    }
+
+    @Override
+    public Will<?> submit(@Nonnull Runnable task) {
+        return submit(Executors.callable(task));
+    }
+
+    @Override
+    public <T> Will<T> submit(@Nonnull Runnable task, @Nullable T result) {
+        return submit(Executors.callable(task, result));
+    }
+
+    @Override
+    public <T> Will<T> submit(@Nonnull Callable<T> task) {
+        SubmittedTask<T> submitted = new SubmittedTask<T>(Preconditions.checkNotNull(task, "Task shouldn't be null"));
+        try {
+            enqueue(submitted);
+        } catch (RejectedExecutionException e) {
+            submitted.reject(e);
+        }
+        return Wills.forListenableFuture(submitted.result);
+    }
+
+    @Override
+    public void execute(@Nonnull Runnable command) {
+        enqueue(new ExecutedTask(Preconditions.checkNotNull(command, "Command shouldn't be null")));
+    }
+
+    /**
+     * Rejects new tasks. Delegate is shut down once all queued tasks are released to it
+     */
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        tryShutdownDelegate();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        List<Runnable> notExecuted = Lists.newArrayList();
+        Task task;
+        while (null != (task = queue.poll())) {
+            queued.decrementAndGet();
+            notExecuted.add(task);
+        }
+        delegateShutdown.set(true);
+        drained.countDown();
+        notExecuted.addAll(this.delegate.shutdownNow());
+        return notExecuted;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegateShutdown.get() && this.delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        if (!drained.await(timeout, unit)) {
+            return false;
+        }
+        return this.delegate.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Dispatches task right away in case there is available permit and no task is waiting. Otherwise, puts it into queue
+     *
+     * @param task Task to be executed
+     * @throws RejectedExecutionException in case executor is shut down, queue is full or delegate rejects the task
+     */
+    private void enqueue(Task task) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Rate limited executor is shut down");
+        }
+        if (0 == queued.get() && 0 == bucket.tryAcquire()) {
+            task.dispatch();
+            return;
+        }
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            throw new RejectedExecutionException("Rate limiter queue is full. Max queue size: " + maxQueued);
+        }
+        queue.add(task);
+        startDrain();
+    }
+
+    private void startDrain() {
+        if (draining.compareAndSet(false, true)) {
+            releaseDrain();
+        }
+    }
+
+    /**
+     * Hands drain over to the delegate, so queued tasks are released from delegate's thread
+     */
+    private void releaseDrain() {
+        try {
+            delegate.execute(drain);
+        } catch (RuntimeException e) {
+            /* delegate is shut down or saturated. Nobody is going to release queued tasks */
+            Task task;
+            while (null != (task = queue.poll())) {
+                queued.decrementAndGet();
+                task.reject(e);
+            }
+            finishDrain();
+        }
+    }
+
+    /**
+     * Releases queued tasks while there are available permits. Reschedules itself once permits are exhausted.
+     * Only one drain is active at once, so there is only one consumer of the queue
+     */
+    private void drain() {
+        boolean rescheduled = false;
+        try {
+            Task task;
+            while (null != (task = queue.peek())) {
+                if (!task.isCancelled()) {
+                    long wait = bucket.tryAcquire();
+                    if (0 != wait) {
+                        timer.schedule(releaseDrain, wait, TimeUnit.NANOSECONDS);
+                        rescheduled = true;
+                        return;
+                    }
+                }
+                /* queue may be drained concurrently by shutdownNow */
+                if (queue.remove(task)) {
+                    queued.decrementAndGet();
+                    if (!task.isCancelled()) {
+                        dispatch(task);
+                    }
+                }
+            }
+        } finally {
+            if (!rescheduled) {
+                finishDrain();
+            }
+        }
+    }
+
+    private void finishDrain() {
+        draining.set(false);
+        /* task may be added after queue is checked but before drain is finished */
+        if (!queue.isEmpty()) {
+            startDrain();
+        }
+        tryShutdownDelegate();
+    }
+
+    private void dispatch(Task task) {
+        try {
+            task.dispatch();
+        } catch (RuntimeException e) {
+            task.reject(e);
+        }
+    }
+
+    private void tryShutdownDelegate() {
+        if (shutdown && 0 == queued.get() && !draining.get() && delegateShutdown.compareAndSet(false, true)) {
+            this.delegate.shutdown();
+            drained.countDown();
+        }
+    }
+
+    /**
+     * Task waiting for permit
+     */
+    private abstract static class Task implements Runnable {
+
+        /**
+         * Hands task over to the delegate
+         */
+        abstract void dispatch();
+
+        /**
+         * Completes task which cannot be dispatched
+         *
+         * @param e Reason of rejection
+         */
+        abstract void reject(RuntimeException e);
+
+        abstract boolean isCancelled();
+    }
+
+    /**
+     * Task submitted with one of submit methods. Its Will is completed by the Future delegate returns,
+     * or failed in case task is rejected
+     */
+    private final class SubmittedTask<T> extends Task {
+
+        private final Callable<T> callable;
+        private final SettableFuture<T> result = SettableFuture.create();
+
+        private SubmittedTask(Callable<T> callable) {
+            this.callable = callable;
+        }
+
+        @Override
+        void dispatch() {
+            result.setFuture(delegate.submit(callable));
+        }
+
+        @Override
+        void reject(RuntimeException e) {
+            result.setException(e);
+        }
+
+        @Override
+        boolean isCancelled() {
+            return result.isCancelled();
+        }
+
+        @Override
+        public void run() {
+            try {
+                result.set(callable.call());
+            } catch (Throwable e) {
+                result.setException(e);
+            }
+        }
+    }
+
+    /**
+     * Command passed to execute method. There is nobody to report rejection of it to
+     */
+    private final class ExecutedTask extends Task {
+
+        private final Runnable command;
+
+        private ExecutedTask(Runnable command) {
+            this.command = command;
+        }
+
+        @Override
+        void dispatch() {
+            delegate.execute(command);
+        }
+
+        @Override
+        void reject(RuntimeException e) {
+            /* nothing to complete */
+        }
+
+        @Override
+        boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public void run() {
+            command.run();
+        }
+    }
+
+    /**
+     * Lock-free token bucket implemented as generic cell rate algorithm: single atomic
+     * holds theoretical arrival time of next permit
+     */
+    private static final class TokenBucket {
+
+        private final long intervalNanos;
+        private final long toleranceNanos;
+        private final AtomicLong nextPermitAt = new AtomicLong(System.nanoTime());
+
+        private TokenBucket(double permitsPerSecond, int burst) {
+            Preconditions.checkArgument(permitsPerSecond > 0, "Permits per second should be positive");
+            Preconditions.checkArgument(burst > 0, "Burst should be positive");
+            this.intervalNanos = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+            this.toleranceNanos = intervalNanos * (burst - 1);
+        }
+
+        /**
+         * @return Zero if permit is acquired. Otherwise, nanos till next permit is available
+         */
+        private long tryAcquire() {
+            while (true) {
+                long now = System.nanoTime();
+                long next = nextPermitAt.get();
+                long base = next - now > 0 ? next : now;
+                long wait = base - now - toleranceNanos;
+                if (wait > 0) {
+                    return wait;
+                }
+                if (nextPermitAt.compareAndSet(next, base + intervalNanos)) {
+                    return 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Rate limits tasks per key. Each key has its own rate limiter and queue, created on first submit
+     * and never evicted, so keys are expected to be of limited cardinality (tenants, APIs, etc)
+     *
+     * @param <K> Type of key
+     */
+    static final class ByKey<K> implements KeyedWillExecutor<K> {
+
+        private final ListeningExecutorService delegate;
+        private final ScheduledExecutorService timer;
+        private final double permitsPerSecond;
+        private final int burst;
+        private final int maxQueued;
+
+        private final ConcurrentMap<K, RateLimitedWillExecutorService> limiters =
+                new ConcurrentHashMap<K, RateLimitedWillExecutorService>();
+
+        ByKey(ListeningExecutorService delegate, ScheduledExecutorService timer,
+                double permitsPerSecond, int burst, int maxQueued) {
+            Preconditions.checkArgument(permitsPerSecond > 0, "Permits per second should be positive");
+            Preconditions.checkArgument(burst > 0, "Burst should be positive");
+            Preconditions.checkArgument(maxQueued >= 0, "Queue size shouldn't be negative");
+            this.delegate = Preconditions.checkNotNull(delegate, "Delegate shouldn't be null");
+            this.timer = Preconditions.checkNotNull(timer, "Timer shouldn't be null");
+            this.permitsPerSecond = permitsPerSecond;
+            this.burst = burst;
+            this.maxQueued = maxQueued;
+        }
+
+        @Override
+        public Will<?> submit(@Nonnull K key, @Nonnull Runnable task) {
+            return forKey(key).submit(task);
+        }
+
+        @Override
+        public <T> Will<T> submit(@Nonnull K key, @Nonnull Callable<T> task) {
+            return forKey(key).submit(task);
+        }
+
+        private RateLimitedWillExecutorService forKey(K key) {
+            Preconditions.checkNotNull(key, "Key shouldn't be null");
+            RateLimitedWillExecutorService limiter = limiters.get(key);
+            if (null == limiter) {
+                RateLimitedWillExecutorService created =
+                        new RateLimitedWillExecutorService(delegate, timer, permitsPerSecond, burst, maxQueued);
+                limiter = limiters.putIfAbsent(key, created);
+                if (null == limiter) {
+                    limiter = created;
+                }
+            }
+            return limiter;
+        }
+    }
+}
@@ -23,6 +23,7 @@ import com.google.common.util.concurrent.FutureFallback;
 import com.google.common.util.concurrent.ListenableFuture;
 
 import javax.annotation.Nonnull;
+import java.util.concurrent.Callable;
 
 /**
  * Useful wrapper around Google's {@link com.google.common.util.concurrent.ListenableFuture}
@@ -96,6 +97,8 @@ public interface Will<T> extends ListenableFuture<T> {
 
     /**
      * Replaces current will with new one in case of fail
+     * Provided Will is observed only in case of fail, so {@link Wills#lazy(java.util.concurrent.Callable)}
+     * may be used to avoid starting fallback work which is never consumed
      * <b>PAY ATTENTION - this method creates new Will instance</b>
      *
      * @param future <b>NEW</b> Will
@@ -103,6 +106,17 @@ public interface Will<T> extends ListenableFuture<T> {
      */
     Will<T> replaceFailed(Will<T> future);
 
+    /**
+     * Replaces current will with new one created by provided supplier in case of fail.
+     * Supplier is called only in case of fail
+     * <b>PAY ATTENTION - this method creates new Will instance</b>
+     *
+     * @param fallback Factory of fallback Will
+     * @return <b>NEW</b> Will
+     * @see Wills#lazy(java.util.concurrent.Callable)
+     */
+    Will<T> replaceFailed(Callable<Will<T>> fallback);
+
     /**
      * Creates new {@link Will} containing transformed result of this {@link Will} result using provided function
      *
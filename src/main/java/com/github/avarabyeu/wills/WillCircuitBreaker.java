@@ -0,0 +1,551 @@
+/*
+ * Copyright (C) 2014 Andrei Varabyeu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.avarabyeu.wills;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.AbstractListeningExecutorService;
+import com.google.common.util.concurrent.FutureCallback;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Circuit breaker for {@link Will} suppliers and {@link WillExecutorService}s.
+ * Tracks failure rate and slow call rate of last calls in lock-free sliding window. Once one of them exceeds threshold,
+ * breaker becomes {@link State#OPEN} and fails fast with {@link CircuitBreakerOpenException} instead of calling supplier.
+ * After configured wait duration breaker becomes {@link State#HALF_OPEN} and permits limited number of probe calls.
+ * Breaker is closed again if all of them are successful, and opened otherwise. In case probe calls are not completed
+ * in configured time breaker is opened as well, so hung probes do not keep it half-open forever.
+ * Cancelled calls are not recorded: cancellation says nothing about health of callee
+ *
+ * @author Andrei Varabyeu
+ */
+public final class WillCircuitBreaker {
+
+    /**
+     * State of circuit breaker
+     */
+    public enum State {
+        /**
+         * All calls are permitted, outcomes are recorded into sliding window
+         */
+        CLOSED,
+        /**
+         * No calls are permitted
+         */
+        OPEN,
+        /**
+         * Limited number of probe calls is permitted
+         */
+        HALF_OPEN
+    }
+
+    /* outcome flags stored in sliding window slots. Zero means slot is empty */
+    private static final int RECORDED = 1;
+    private static final int FAILED = 1 << 1;
+    private static final int SLOW = 1 << 2;
+
+    private final float failureRateThreshold;
+    private final float slowCallRateThreshold;
+    private final long slowCallDurationNanos;
+    private final int slidingWindowSize;
+    private final int minimumNumberOfCalls;
+    private final long waitDurationInOpenStateNanos;
+    private final int permittedCallsInHalfOpenState;
+    private final long maxWaitDurationInHalfOpenStateNanos;
+    private final Ticker ticker;
+
+    private final AtomicReference<Phase> phase;
+
+    private WillCircuitBreaker(Builder builder) {
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.slowCallRateThreshold = builder.slowCallRateThreshold;
+        this.slowCallDurationNanos = builder.slowCallDurationNanos;
+        this.slidingWindowSize = builder.slidingWindowSize;
+        this.minimumNumberOfCalls = builder.minimumNumberOfCalls;
+        this.waitDurationInOpenStateNanos = builder.waitDurationInOpenStateNanos;
+        this.permittedCallsInHalfOpenState = builder.permittedCallsInHalfOpenState;
+        this.maxWaitDurationInHalfOpenStateNanos = builder.maxWaitDurationInHalfOpenStateNanos;
+        this.ticker = builder.ticker;
+        this.phase = new AtomicReference<Phase>(new Closed());
+    }
+
+    /**
+     * Creates circuit breaker with default configuration
+     *
+     * @return Circuit breaker
+     */
+    public static WillCircuitBreaker create() {
+        return builder().build();
+    }
+
+    /**
+     * Creates builder of circuit breaker
+     *
+     * @return Builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return Current state of circuit breaker
+     */
+    public State getState() {
+        return phase.get().state();
+    }
+
+    /**
+     * Calls provided supplier in case circuit breaker permits it and records outcome of created {@link Will}.
+     * Otherwise, returns failed {@link Will} with {@link CircuitBreakerOpenException} without calling supplier.
+     * Outcome of cancelled Will is not recorded
+     *
+     * @param supplier Factory of Will
+     * @param <T>      Type of Will
+     * @return Will created by supplier or failed Will
+     */
+    public <T> Will<T> call(@Nonnull Callable<Will<T>> supplier) {
+        Preconditions.checkNotNull(supplier, "Supplier shouldn't be null");
+        final Phase permitted = acquire();
+        if (null == permitted) {
+            return Wills.failedWill(new CircuitBreakerOpenException(getState()));
+        }
+
+        final long start = ticker.read();
+        final Will<T> will;
+        try {
+            will = Preconditions.checkNotNull(supplier.call(), "Created Will shouldn't be null");
+        } catch (Throwable e) {
+            complete(permitted, start, false);
+            return Wills.failedWill(e);
+        }
+        return will.callback(new FutureCallback<T>() {
+            @Override
+            public void onSuccess(@Nullable T result) {
+                complete(permitted, start, true);
+            }
+
+            @Override
+            public void onFailure(@Nonnull Throwable t) {
+                if (will.isCancelled()) {
+                    permitted.onCancelled();
+                } else {
+                    complete(permitted, start, false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Decorates provided supplier. Each call of returned supplier goes through {@link #call(Callable)}
+     *
+     * @param supplier Factory of Will
+     * @param <T>      Type of Will
+     * @return Decorated supplier
+     */
+    public <T> Callable<Will<T>> decorate(@Nonnull final Callable<Will<T>> supplier) {
+        Preconditions.checkNotNull(supplier, "Supplier shouldn't be null");
+        return new Callable<Will<T>>() {
+            @Override
+            public Will<T> call() {
+                return WillCircuitBreaker.this.call(supplier);
+            }
+        };
+    }
+
+    /**
+     * Decorates provided executor service. All submitted tasks go through this circuit breaker.
+     * Submit methods return failed Will once breaker doesn't permit the call, execute method
+     * throws {@link java.util.concurrent.RejectedExecutionException}
+     *
+     * @param delegate Executor service to be decorated
+     * @return Decorated executor service
+     */
+    public WillExecutorService decorate(@Nonnull WillExecutorService delegate) {
+        return new CircuitBreakingExecutor(delegate);
+    }
+
+    @Nullable
+    private Phase acquire() {
+        return phase.get().acquire();
+    }
+
+    private void complete(Phase permitted, long start, boolean successful) {
+        permitted.onResult(!successful, ticker.read() - start >= slowCallDurationNanos);
+    }
+
+    private void transition(Phase from, Phase to) {
+        phase.compareAndSet(from, to);
+    }
+
+    /**
+     * Behaviour of circuit breaker in some state. Each transition creates new phase instance,
+     * so outcomes of calls permitted by previous phase do not affect the current one
+     */
+    private abstract class Phase {
+
+        abstract State state();
+
+        /**
+         * @return Phase call is permitted by or NULL if call isn't permitted
+         */
+        @Nullable
+        abstract Phase acquire();
+
+        abstract void onResult(boolean failed, boolean slow);
+
+        /**
+         * Permitted call is cancelled, so its outcome is unknown
+         */
+        void onCancelled() {
+            /* nothing to record */
+        }
+    }
+
+    private final class Closed extends Phase {
+
+        private final AtomicIntegerArray outcomes = new AtomicIntegerArray(slidingWindowSize);
+        private final AtomicInteger cursor = new AtomicInteger();
+        private final AtomicInteger recordedCalls = new AtomicInteger();
+        private final AtomicInteger failedCalls = new AtomicInteger();
+        private final AtomicInteger slowCalls = new AtomicInteger();
+
+        @Override
+        State state() {
+            return State.CLOSED;
+        }
+
+        @Override
+        Phase acquire() {
+            return this;
+        }
+
+        @Override
+        void onResult(boolean failed, boolean slow) {
+            int outcome = RECORDED | (failed ? FAILED : 0) | (slow ? SLOW : 0);
+            int slot = (cursor.getAndIncrement() & Integer.MAX_VALUE) % slidingWindowSize;
+            int evicted = outcomes.getAndSet(slot, outcome);
+            if (0 == evicted) {
+                recordedCalls.incrementAndGet();
+            }
+            adjust(failedCalls, evicted, outcome, FAILED);
+            adjust(slowCalls, evicted, outcome, SLOW);
+
+            int calls = recordedCalls.get();
+            if (calls >= minimumNumberOfCalls
+                    && (exceeds(failedCalls.get(), calls, failureRateThreshold)
+                    || exceeds(slowCalls.get(), calls, slowCallRateThreshold))) {
+                transition(this, new Open());
+            }
+        }
+
+        private void adjust(AtomicInteger counter, int evicted, int outcome, int flag) {
+            int delta = ((outcome & flag) != 0 ? 1 : 0) - ((evicted & flag) != 0 ? 1 : 0);
+            if (0 != delta) {
+                counter.addAndGet(delta);
+            }
+        }
+
+        private boolean exceeds(int count, int calls, float threshold) {
+            return count * 100f / calls >= threshold;
+        }
+    }
+
+    private final class Open extends Phase {
+
+        private final long openedAt = ticker.read();
+
+        @Override
+        State state() {
+            return State.OPEN;
+        }
+
+        @Override
+        Phase acquire() {
+            if (ticker.read() - openedAt < waitDurationInOpenStateNanos) {
+                return null;
+            }
+            transition(this, new HalfOpen());
+            Phase current = phase.get();
+            return current == this ? null : current.acquire();
+        }
+
+        @Override
+        void onResult(boolean failed, boolean slow) {
+            /* nothing is permitted in this phase */
+        }
+    }
+
+    private final class HalfOpen extends Phase {
+
+        private final long startedAt = ticker.read();
+        private final AtomicInteger permits = new AtomicInteger(permittedCallsInHalfOpenState);
+        private final AtomicInteger successfulCalls = new AtomicInteger();
+
+        @Override
+        State state() {
+            return State.HALF_OPEN;
+        }
+
+        @Override
+        Phase acquire() {
+            /* probes are not completed in time, so some of them are hung. Give callee another wait duration */
+            if (ticker.read() - startedAt >= maxWaitDurationInHalfOpenStateNanos) {
+                transition(this, new Open());
+                return null;
+            }
+            /* do not decrement below zero to avoid overflow under the long-lasting pressure */
+            int available;
+            do {
+                available = permits.get();
+                if (available <= 0) {
+                    return null;
+                }
+            } while (!permits.compareAndSet(available, available - 1));
+            return this;
+        }
+
+        @Override
+        void onResult(boolean failed, boolean slow) {
+            if (failed || slow) {
+                transition(this, new Open());
+            } else if (successfulCalls.incrementAndGet() >= permittedCallsInHalfOpenState) {
+                transition(this, new Closed());
+            }
+        }
+
+        @Override
+        void onCancelled() {
+            /* return permit so another probe is permitted instead */
+            permits.incrementAndGet();
+        }
+    }
+
+    /**
+     * Executor service submitting all tasks through circuit breaker
+     * Delegates all another methods to provided executor service
+     */
+    private final class CircuitBreakingExecutor extends AbstractListeningExecutorService implements WillExecutorService {
+
+        private final WillExecutorService delegate;
+
+        private CircuitBreakingExecutor(WillExecutorService delegate) {
+            this.delegate = Preconditions.checkNotNull(delegate, "Delegate shouldn't be null");
+        }
+
+        @Override
+        public Will<?> submit(@Nonnull Runnable task) {
+            return submit(Executors.callable(task));
+        }
+
+        @Override
+        public <T> Will<T> submit(@Nonnull Runnable task, @Nullable T result) {
+            return submit(Executors.callable(task, result));
+        }
+
+        @Override
+        public <T> Will<T> submit(@Nonnull final Callable<T> task) {
+            return call(new Callable<Will<T>>() {
+                @Override
+                public Will<T> call() {
+                    return delegate.submit(task);
+                }
+            });
+        }
+
+        @Override
+        public void execute(@Nonnull final Runnable command) {
+            final Phase permitted = acquire();
+            if (null == permitted) {
+                throw new RejectedExecutionException(new CircuitBreakerOpenException(getState()));
+            }
+            final long start = ticker.read();
+            try {
+                delegate.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        boolean successful = false;
+                        try {
+                            command.run();
+                            successful = true;
+                        } finally {
+                            complete(permitted, start, successful);
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                complete(permitted, start, false);
+                throw e;
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            this.delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return this.delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return this.delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return this.delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+            return this.delegate.awaitTermination(timeout, unit);
+        }
+    }
+
+    /**
+     * Builder of {@link WillCircuitBreaker}
+     */
+    public static final class Builder {
+
+        private float failureRateThreshold = 50f;
+        private float slowCallRateThreshold = 100f;
+        private long slowCallDurationNanos = TimeUnit.SECONDS.toNanos(60);
+        private int slidingWindowSize = 100;
+        private int minimumNumberOfCalls = 20;
+        private long waitDurationInOpenStateNanos = TimeUnit.SECONDS.toNanos(60);
+        private int permittedCallsInHalfOpenState = 10;
+        private long maxWaitDurationInHalfOpenStateNanos = TimeUnit.SECONDS.toNanos(60);
+        private Ticker ticker = Ticker.systemTicker();
+
+        private Builder() {
+        }
+
+        /**
+         * @param percent Failure rate (in percents) breaker is opened at. 50 by default
+         * @return This builder
+         */
+        public Builder failureRateThreshold(float percent) {
+            Preconditions.checkArgument(percent > 0 && percent <= 100, "Failure rate threshold should be in (0, 100] range");
+            this.failureRateThreshold = percent;
+            return this;
+        }
+
+        /**
+         * @param percent Slow call rate (in percents) breaker is opened at. 100 by default
+         * @return This builder
+         */
+        public Builder slowCallRateThreshold(float percent) {
+            Preconditions.checkArgument(percent > 0 && percent <= 100, "Slow call rate threshold should be in (0, 100] range");
+            this.slowCallRateThreshold = percent;
+            return this;
+        }
+
+        /**
+         * @param duration Duration call is considered as slow after. 60 seconds by default
+         * @param unit     Time unit of duration
+         * @return This builder
+         */
+        public Builder slowCallDuration(long duration, @Nonnull TimeUnit unit) {
+            Preconditions.checkArgument(duration > 0, "Slow call duration should be positive");
+            this.slowCallDurationNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * @param size Number of last calls failure and slow call rates are calculated on. 100 by default
+         * @return This builder
+         */
+        public Builder slidingWindowSize(int size) {
+            Preconditions.checkArgument(size > 0, "Sliding window size should be positive");
+            this.slidingWindowSize = size;
+            return this;
+        }
+
+        /**
+         * @param calls Minimum number of recorded calls required before rates are calculated. 20 by default
+         * @return This builder
+         */
+        public Builder minimumNumberOfCalls(int calls) {
+            Preconditions.checkArgument(calls > 0, "Minimum number of calls should be positive");
+            this.minimumNumberOfCalls = calls;
+            return this;
+        }
+
+        /**
+         * @param duration Duration breaker stays open before permitting probe calls. 60 seconds by default
+         * @param unit     Time unit of duration
+         * @return This builder
+         */
+        public Builder waitDurationInOpenState(long duration, @Nonnull TimeUnit unit) {
+            Preconditions.checkArgument(duration >= 0, "Wait duration shouldn't be negative");
+            this.waitDurationInOpenStateNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * @param calls Number of probe calls permitted in half-open state. 10 by default
+         * @return This builder
+         */
+        public Builder permittedCallsInHalfOpenState(int calls) {
+            Preconditions.checkArgument(calls > 0, "Number of permitted calls should be positive");
+            this.permittedCallsInHalfOpenState = calls;
+            return this;
+        }
+
+        /**
+         * @param duration Duration breaker waits for completion of probe calls in half-open state before it is opened
+         *                 again. 60 seconds by default
+         * @param unit     Time unit of duration
+         * @return This builder
+         */
+        public Builder maxWaitDurationInHalfOpenState(long duration, @Nonnull TimeUnit unit) {
+            Preconditions.checkArgument(duration > 0, "Max wait duration should be positive");
+            this.maxWaitDurationInHalfOpenStateNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * @param ticker Time source. {@link com.google.common.base.Ticker#systemTicker()} by default
+         * @return This builder
+         */
+        public Builder ticker(@Nonnull Ticker ticker) {
+            this.ticker = Preconditions.checkNotNull(ticker, "Ticker shouldn't be null");
+            return this;
+        }
+
+        /**
+         * @return Circuit breaker
+         */
+        public WillCircuitBreaker build() {
+            Preconditions.checkState(minimumNumberOfCalls <= slidingWindowSize,
+                    "Minimum number of calls shouldn't exceed sliding window size");
+            return new WillCircuitBreaker(this);
+        }
+    }
+}
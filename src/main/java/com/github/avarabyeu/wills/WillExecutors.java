@@ -4,12 +4,15 @@ import com.google.common.base.Preconditions;
 import com.google.common.util.concurrent.AbstractListeningExecutorService;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -39,6 +42,64 @@ public class WillExecutors {
         return new WillDecorator(MoreExecutors.listeningDecorator(delegate));
     }
 
+    /**
+     * Creates executor service which submits tasks to provided delegate not faster than provided rate.
+     * Tasks exceeding the rate wait in unbounded queue without holding any thread
+     *
+     * @param delegate         Executor service tasks are executed on
+     * @param permitsPerSecond Number of tasks submitted to delegate per second
+     * @param burst            Number of tasks which may be submitted at once after idle period
+     * @return Rate limited WillExecutor service
+     */
+    public static WillExecutorService rateLimited(ListeningExecutorService delegate, double permitsPerSecond, int burst) {
+        return rateLimited(delegate, permitsPerSecond, burst, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates executor service which submits tasks to provided delegate not faster than provided rate.
+     * Tasks exceeding the rate wait in queue without holding any thread. Once queue is full, submit methods
+     * return failed {@link com.github.avarabyeu.wills.Will} with {@link java.util.concurrent.RejectedExecutionException}
+     *
+     * @param delegate         Executor service tasks are executed on
+     * @param permitsPerSecond Number of tasks submitted to delegate per second
+     * @param burst            Number of tasks which may be submitted at once after idle period
+     * @param maxQueued        Max number of tasks waiting for permit
+     * @return Rate limited WillExecutor service
+     */
+    public static WillExecutorService rateLimited(ListeningExecutorService delegate, double permitsPerSecond, int burst, int maxQueued) {
+        return new RateLimitedWillExecutorService(delegate, timer(), permitsPerSecond, burst, maxQueued);
+    }
+
+    /**
+     * Creates executor which applies rate limit per key of submitted task (tenant, API, etc).
+     * Limiter of each key is created on first submit and never evicted, so number of keys is expected to be limited
+     *
+     * @param delegate         Executor service tasks are executed on
+     * @param permitsPerSecond Number of tasks of each key submitted to delegate per second
+     * @param burst            Number of tasks of each key which may be submitted at once after idle period
+     * @param maxQueued        Max number of tasks of each key waiting for permit
+     * @param <K>              Type of key
+     * @return Rate limited executor
+     * @see #rateLimited(com.google.common.util.concurrent.ListeningExecutorService, double, int, int)
+     */
+    public static <K> KeyedWillExecutor<K> rateLimitedByKey(ListeningExecutorService delegate, double permitsPerSecond, int burst, int maxQueued) {
+        return new RateLimitedWillExecutorService.ByKey<K>(delegate, timer(), permitsPerSecond, burst, maxQueued);
+    }
+
+    /**
+     * @return Shared daemon timer used by executors from this class for scheduling internal tasks
+     */
+    static ScheduledExecutorService timer() {
+        return TimerHolder.TIMER;
+    }
+
+    /**
+     * Lazy holder of shared timer
+     */
+    private static final class TimerHolder {
+        private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("wills-timer-%d").build());
+    }
 
     /**
      * Decorates Guava's Executor service. Make all submit method return {@link com.github.avarabyeu.wills.Will} instead of default {@link com.google.common.util.concurrent.ListenableFuture}
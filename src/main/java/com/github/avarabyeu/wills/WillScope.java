@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2014 Andrei Varabyeu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.avarabyeu.wills;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Scope tracking all {@link Will}s forked within it. Once some of them fails, scope deadline is exceeded
+ * or scope is closed, all outstanding Wills are cancelled, so no orphaned tasks keep running after, for example,
+ * request is aborted:
+ * <pre>
+ * WillScope scope = WillScope.open(1, TimeUnit.SECONDS);
+ * try {
+ *     Will&lt;User&gt; user = scope.fork(executor, new LoadUser(id));
+ *     Will&lt;Orders&gt; orders = scope.fork(executor, new LoadOrders(id));
+ *     scope.join();
+ *     return render(user.obtain(), orders.obtain());
+ * } finally {
+ *     scope.close();
+ * }
+ * </pre>
+ * Forked Wills are kept in lock-free list till the scope is garbage collected, so scope is expected
+ * to be short-lived
+ *
+ * @author Andrei Varabyeu
+ */
+public final class WillScope implements Closeable {
+
+    private final SettableFuture<Void> done = SettableFuture.create();
+
+    /* head of lock-free stack of forked Wills */
+    private final AtomicReference<Child> children = new AtomicReference<Child>();
+
+    /* number of not completed children plus one token of scope owner released once join is requested */
+    private final AtomicInteger pending = new AtomicInteger(1);
+    private final AtomicBoolean joined = new AtomicBoolean();
+
+    private volatile boolean closed;
+    private volatile Deadline deadline;
+
+    private WillScope() {
+        done.addListener(new Runnable() {
+            @Override
+            public void run() {
+                onDone();
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Opens scope without deadline
+     *
+     * @return New scope
+     */
+    public static WillScope open() {
+        return new WillScope();
+    }
+
+    /**
+     * Opens scope with deadline. Once it is exceeded, scope fails with {@link java.util.concurrent.TimeoutException}
+     * and all outstanding Wills are cancelled
+     *
+     * @param timeout Timeout of scope
+     * @param unit    Time unit of timeout
+     * @return New scope
+     */
+    public static WillScope open(long timeout, @Nonnull TimeUnit unit) {
+        WillScope scope = new WillScope();
+        long timeoutNanos = unit.toNanos(timeout);
+        Deadline deadline = new Deadline(scope, timeoutNanos);
+        scope.deadline = deadline;
+        deadline.timer = WillExecutors.timer().schedule(deadline, timeoutNanos, TimeUnit.NANOSECONDS);
+        /* scope may be completed before deadline is assigned */
+        if (scope.done.isDone()) {
+            deadline.cancel();
+        }
+        return scope;
+    }
+
+    /**
+     * Starts tracking of provided Will. Will is cancelled in case scope fails or is closed
+     *
+     * @param will Will to be tracked
+     * @param <T>  Type of Will
+     * @return Provided Will
+     */
+    public <T> Will<T> fork(@Nonnull Will<T> will) {
+        Preconditions.checkNotNull(will, "Will shouldn't be null");
+        Preconditions.checkState(!closed, "Scope is closed");
+        int count;
+        do {
+            count = pending.get();
+            Preconditions.checkState(0 != count, "Scope is already joined");
+        } while (!pending.compareAndSet(count, count + 1));
+
+        Child child = new Child(will);
+        do {
+            child.next = children.get();
+        } while (!children.compareAndSet(child.next, child));
+        will.addListener(child, MoreExecutors.directExecutor());
+
+        /* scope may be failed or closed concurrently, after children are cancelled */
+        if (done.isDone()) {
+            will.cancel(true);
+        }
+        return will;
+    }
+
+    /**
+     * Submits task to provided executor service and starts tracking of its Will
+     *
+     * @param executor Executor service task is submitted to
+     * @param task     Task to be submitted
+     * @param <T>      Type of task result
+     * @return Will of task result
+     * @see #fork(Will)
+     */
+    public <T> Will<T> fork(@Nonnull WillExecutorService executor, @Nonnull Callable<T> task) {
+        Preconditions.checkState(!closed, "Scope is closed");
+        return fork(executor.submit(task));
+    }
+
+    /**
+     * Creates Will which is completed once all forked Wills are completed. Fails with exception of first failed
+     * Will or {@link java.util.concurrent.TimeoutException} in case deadline is exceeded.
+     * Wills shouldn't be forked once join is requested
+     *
+     * @return Will of scope completion
+     */
+    public Will<Void> joinAll() {
+        if (joined.compareAndSet(false, true)) {
+            release();
+        }
+        return Wills.forListenableFuture(done);
+    }
+
+    /**
+     * Blocks current thread till all forked Wills are completed
+     * Propagates exception of first failed Will
+     *
+     * @see #joinAll()
+     */
+    public void join() {
+        joinAll().obtain();
+    }
+
+    /**
+     * Cancels all outstanding Wills. Scope doesn't accept new Wills once closed
+     */
+    @Override
+    public void close() {
+        closed = true;
+        done.cancel(false);
+    }
+
+    private void release() {
+        if (0 == pending.decrementAndGet()) {
+            done.set(null);
+        }
+    }
+
+    private void fail(Throwable failure) {
+        done.setException(failure);
+    }
+
+    private void onDone() {
+        Deadline timer = deadline;
+        if (null != timer) {
+            timer.cancel();
+        }
+        if (!isSuccessful(done)) {
+            for (Child child = children.get(); null != child; child = child.next) {
+                child.will.cancel(true);
+            }
+        }
+    }
+
+    private static boolean isSuccessful(Future<?> future) {
+        try {
+            Uninterruptibles.getUninterruptibly(future);
+            return true;
+        } catch (ExecutionException e) {
+            return false;
+        } catch (CancellationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Deadline task. Cancelled task stays in timer queue till the deadline, so reference to the scope is cleared
+     * on cancel: completed scope, its children and their results shouldn't be retained by the timer
+     */
+    private static final class Deadline implements Runnable {
+
+        private final long timeoutNanos;
+        private volatile WillScope scope;
+        private volatile ScheduledFuture<?> timer;
+
+        private Deadline(WillScope scope, long timeoutNanos) {
+            this.scope = scope;
+            this.timeoutNanos = timeoutNanos;
+        }
+
+        @Override
+        public void run() {
+            WillScope exceeded = scope;
+            if (null != exceeded) {
+                exceeded.fail(new TimeoutException("Scope deadline of " + timeoutNanos + "ns is exceeded"));
+            }
+        }
+
+        private void cancel() {
+            scope = null;
+            ScheduledFuture<?> scheduled = timer;
+            if (null != scheduled) {
+                scheduled.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Node of children stack. Also listens to completion of the child
+     */
+    private final class Child implements Runnable {
+
+        private final Future<?> will;
+        private Child next;
+
+        private Child(Future<?> will) {
+            this.will = will;
+        }
+
+        @Override
+        public void run() {
+            if (!will.isCancelled()) {
+                try {
+                    Uninterruptibles.getUninterruptibly(will);
+                } catch (ExecutionException e) {
+                    fail(e.getCause());
+                }
+            }
+            release();
+        }
+    }
+}
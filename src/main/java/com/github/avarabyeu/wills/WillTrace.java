@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2014 Andrei Varabyeu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.avarabyeu.wills;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Assembly trace of {@link Will} stage: where and when the stage has been created, when it has been completed
+ * and which stages it has been created on top of. Helps to find out which stage of long map/flatMap/when
+ * chain eats the latency budget, since stack traces of pool threads do not contain code assembled the chain.
+ * <p>
+ * Disabled by default. To enable, start JVM with <b>-Dwills.trace=true</b>. Sampling rate may be configured
+ * with <b>-Dwills.trace.rate</b> (from 0 to 1, 1 by default): stages created from scratch are traced
+ * with provided rate, stages created on top of traced ones are always traced. Tracing is configured once
+ * on class loading, so when disabled Will creation pays one static final check only.
+ *
+ * @author Andrei Varabyeu
+ * @see Wills#trace(Will)
+ */
+public final class WillTrace {
+
+    /**
+     * Whether tracing is enabled. Static final, so JIT eliminates tracing code once disabled
+     */
+    static final boolean ENABLED = Boolean.getBoolean("wills.trace");
+
+    private static final long SAMPLING_INTERVAL = samplingInterval(System.getProperty("wills.trace.rate"));
+
+    private static final AtomicLong SAMPLING_COUNTER = new AtomicLong();
+
+    private static final long NOT_COMPLETED = Long.MIN_VALUE;
+
+    /* frames of these packages are skipped while looking for assembly site */
+    private static final String LIBRARY_PACKAGE = WillTrace.class.getPackage().getName() + ".";
+    private static final String GUAVA_PACKAGE = "com.google.common.util.concurrent.";
+
+    private final String stage;
+    private final Throwable assembly;
+    private final List<WillTrace> parents;
+    private final long createdAt;
+    private volatile long completedAt = NOT_COMPLETED;
+
+    private WillTrace(String stage, List<WillTrace> parents) {
+        this.stage = stage;
+        this.parents = parents;
+        this.assembly = new Throwable("Will assembly");
+        this.createdAt = System.nanoTime();
+    }
+
+    /**
+     * @return TRUE if tracing is enabled for this JVM
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Creates trace of stage in case tracing is enabled and stage is sampled
+     *
+     * @param stage  Name of stage
+     * @param future Future of stage
+     * @return Trace or NULL
+     */
+    @Nullable
+    static WillTrace sample(String stage, ListenableFuture<?> future) {
+        if (!ENABLED) {
+            return null;
+        }
+        return sampled() ? start(new WillTrace(stage, Collections.<WillTrace>emptyList()), future) : null;
+    }
+
+    /**
+     * Creates trace of stage in case tracing is enabled and stage is sampled
+     *
+     * @param stage  Name of stage
+     * @param future Future of stage
+     * @param parent Will the new stage is created on top of
+     * @return Trace or NULL
+     */
+    @Nullable
+    static WillTrace sample(String stage, ListenableFuture<?> future, Will<?> parent) {
+        if (!ENABLED) {
+            return null;
+        }
+        WillTrace parentTrace = Wills.trace(parent);
+        if (null == parentTrace) {
+            return sample(stage, future);
+        }
+        return start(new WillTrace(stage, Collections.singletonList(parentTrace)), future);
+    }
+
+    /**
+     * Creates trace of stage in case tracing is enabled and stage is sampled
+     *
+     * @param stage   Name of stage
+     * @param future  Future of stage
+     * @param parents Futures the new stage is created on top of. Only Wills may be traced
+     * @return Trace or NULL
+     */
+    @Nullable
+    static WillTrace sample(String stage, ListenableFuture<?> future, ListenableFuture<?>[] parents) {
+        if (!ENABLED) {
+            return null;
+        }
+        List<WillTrace> traced = Lists.newArrayList();
+        for (ListenableFuture<?> parent : parents) {
+            WillTrace parentTrace = parent instanceof Will ? Wills.trace((Will<?>) parent) : null;
+            if (null != parentTrace) {
+                traced.add(parentTrace);
+            }
+        }
+        if (traced.isEmpty()) {
+            return sample(stage, future);
+        }
+        return start(new WillTrace(stage, ImmutableList.copyOf(traced)), future);
+    }
+
+    private static boolean sampled() {
+        return 0 == SAMPLING_COUNTER.incrementAndGet() % SAMPLING_INTERVAL;
+    }
+
+    private static WillTrace start(final WillTrace trace, ListenableFuture<?> future) {
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                trace.completedAt = System.nanoTime();
+            }
+        }, MoreExecutors.directExecutor());
+        return trace;
+    }
+
+    /**
+     * @return Name of stage. Basically, name of method stage has been created with
+     */
+    public String getStage() {
+        return stage;
+    }
+
+    /**
+     * @return First frame of assembly stack trace outside of this library and Guava's concurrency utilities
+     */
+    @Nullable
+    public StackTraceElement getAssemblySite() {
+        for (StackTraceElement frame : assembly.getStackTrace()) {
+            String className = frame.getClassName();
+            if (!className.startsWith(LIBRARY_PACKAGE) && !className.startsWith(GUAVA_PACKAGE)) {
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Full stack trace of thread stage has been created in
+     */
+    public StackTraceElement[] getAssemblyStackTrace() {
+        return assembly.getStackTrace();
+    }
+
+    /**
+     * @return Traces of stages this one has been created on top of
+     */
+    public List<WillTrace> getParents() {
+        return parents;
+    }
+
+    /**
+     * @return TRUE if Will of this stage is completed
+     */
+    public boolean isCompleted() {
+        return NOT_COMPLETED != completedAt;
+    }
+
+    /**
+     * Time stage took: from the moment it has been created or, if later, the last of its parents has been completed,
+     * till the moment it has been completed. For not completed stages elapsed time till now is returned
+     *
+     * @param unit Time unit of result
+     * @return Duration of stage
+     */
+    public long getDuration(TimeUnit unit) {
+        long start = createdAt;
+        for (WillTrace parent : parents) {
+            long parentCompletedAt = parent.completedAt;
+            if (NOT_COMPLETED != parentCompletedAt && parentCompletedAt - start > 0) {
+                start = parentCompletedAt;
+            }
+        }
+        long end = isCompleted() ? completedAt : System.nanoTime();
+        return unit.convert(Math.max(0, end - start), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Path of stages this one has been assembled from, starting with the root stage and finishing with this one.
+     * In case stage has several parents (e.g. created with {@link Wills#when(Iterable)}) the one completed last
+     * is followed, so path is the critical one
+     *
+     * @return Assembly path
+     */
+    public List<WillTrace> getAssemblyPath() {
+        List<WillTrace> path = Lists.newArrayList();
+        WillTrace current = this;
+        while (null != current) {
+            path.add(current);
+            current = current.latestParent();
+        }
+        return Lists.reverse(path);
+    }
+
+    @Nullable
+    private WillTrace latestParent() {
+        WillTrace latest = null;
+        for (WillTrace parent : parents) {
+            if (!parent.isCompleted()) {
+                return parent;
+            }
+            if (null == latest || parent.completedAt - latest.completedAt > 0) {
+                latest = parent;
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * @return Timeline of assembly path: stage, assembly site and duration of each stage
+     */
+    @Override
+    public String toString() {
+        StringBuilder timeline = new StringBuilder();
+        for (WillTrace trace : getAssemblyPath()) {
+            if (0 != timeline.length()) {
+                timeline.append('\n');
+            }
+            timeline.append(trace.stage)
+                    .append(" at ").append(trace.getAssemblySite())
+                    .append(": ").append(trace.getDuration(TimeUnit.MICROSECONDS)).append("us");
+            if (!trace.isCompleted()) {
+                timeline.append(" (not completed)");
+            }
+        }
+        return timeline.toString();
+    }
+
+    private static long samplingInterval(@Nullable String rate) {
+        if (null == rate) {
+            return 1L;
+        }
+        try {
+            double parsed = Double.parseDouble(rate);
+            return parsed <= 0 ? Long.MAX_VALUE : Math.max(1L, Math.round(1d / parsed));
+        } catch (NumberFormatException e) {
+            return 1L;
+        }
+    }
+}
@@ -19,15 +19,17 @@ package com.github.avarabyeu.wills;
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.common.collect.Iterables;
 import com.google.common.util.concurrent.*;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
-
-import static java.util.Arrays.asList;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Set of useful utility methods to simplify working with {@link Will}
@@ -42,24 +44,106 @@ public final class Wills {
 
     /**
      * Creates chain from provided Wills
+     * Chained Will fails as soon as some of provided Wills fails
      *
      * @param wills Wills to be chained
      * @param <A>   Type of Wills
      * @return Chained Will
      */
     public static <A> Will<List<A>> when(Will<? extends A>... wills) {
-        return when(asList(wills));
+        Aggregator<List<A>> future = Aggregator.<A>toList(wills);
+        return new Of<List<A>>(future, WillTrace.sample("when", future, wills));
     }
 
     /**
      * Creates chain from provided Wills
+     * Chained Will fails as soon as some of provided Wills fails
      *
      * @param wills Wills to be chained
      * @param <A>   Type of Wills
      * @return Chained Will
      */
     public static <A> Will<List<A>> when(Iterable<? extends Will<? extends A>> wills) {
-        return forListenableFuture(Futures.<A>allAsList(wills));
+        ListenableFuture<? extends A>[] inputs = toArray(wills);
+        Aggregator<List<A>> future = Aggregator.<A>toList(inputs);
+        return new Of<List<A>>(future, WillTrace.sample("when", future, inputs));
+    }
+
+    /**
+     * Creates Will which is completed once all provided Wills are completed. Results of Wills are not collected,
+     * so this is cheaper version of {@link #when(Will[])} in case just join is needed.
+     * Created Will fails as soon as some of provided Wills fails
+     *
+     * @param wills Wills to be joined
+     * @return Will of join
+     */
+    public static Will<Void> whenVoid(Will<?>... wills) {
+        Aggregator<Void> future = Aggregator.toVoid(wills);
+        return new Of<Void>(future, WillTrace.sample("whenVoid", future, wills));
+    }
+
+    /**
+     * Creates Will which is completed once all provided Wills are completed. Results of Wills are not collected,
+     * so this is cheaper version of {@link #when(Iterable)} in case just join is needed.
+     * Created Will fails as soon as some of provided Wills fails
+     *
+     * @param wills Wills to be joined
+     * @return Will of join
+     */
+    public static Will<Void> whenVoid(Iterable<? extends Will<?>> wills) {
+        ListenableFuture<?>[] inputs = toArray(wills);
+        Aggregator<Void> future = Aggregator.toVoid(inputs);
+        return new Of<Void>(future, WillTrace.sample("whenVoid", future, inputs));
+    }
+
+    /**
+     * Creates chain from provided Wills collecting results into array of ints instead of list of boxed values
+     * Chained Will fails as soon as some of provided Wills fails
+     *
+     * @param wills Wills to be chained
+     * @return Chained Will
+     */
+    public static Will<int[]> whenInts(Will<Integer>... wills) {
+        Aggregator<int[]> future = Aggregator.toInts(wills);
+        return new Of<int[]>(future, WillTrace.sample("whenInts", future, wills));
+    }
+
+    /**
+     * Creates chain from provided Wills collecting results into array of ints instead of list of boxed values
+     * Chained Will fails as soon as some of provided Wills fails
+     *
+     * @param wills Wills to be chained
+     * @return Chained Will
+     */
+    public static Will<int[]> whenInts(Iterable<? extends Will<Integer>> wills) {
+        ListenableFuture<? extends Integer>[] inputs = Wills.<Integer>toArray(wills);
+        Aggregator<int[]> future = Aggregator.toInts(inputs);
+        return new Of<int[]>(future, WillTrace.sample("whenInts", future, inputs));
+    }
+
+    /**
+     * Creates chain from provided Wills collecting results into array of longs instead of list of boxed values
+     * Chained Will fails as soon as some of provided Wills fails
+     *
+     * @param wills Wills to be chained
+     * @return Chained Will
+     */
+    public static Will<long[]> whenLongs(Will<Long>... wills) {
+        Aggregator<long[]> future = Aggregator.toLongs(wills);
+        return new Of<long[]>(future, WillTrace.sample("whenLongs", future, wills));
+    }
+
+    /**
+     * Creates chain from provided Wills collecting results into array of longs instead of list of boxed values
+     * Chained Will fails as soon as some of provided Wills fails
+     *
+     * @param wills Wills to be chained
+     * @return Chained Will
+     */
+    public static Will<long[]> whenLongs(Iterable<? extends Will<Long>> wills) {
+        ListenableFuture<? extends Long>[] inputs = Wills.<Long>toArray(wills);
+        Aggregator<long[]> future = Aggregator.toLongs(inputs);
+        return new Of<long[]>(future, WillTrace.sample("whenLongs", future, inputs));
     }
 
     /**
@@ -70,7 +154,8 @@ public final class Wills {
      * @return Will
      */
     public static <A> Will<A> of(A value) {
-        return new Of<A>(Futures.immediateFuture(value));
+        ListenableFuture<A> future = Futures.immediateFuture(value);
+        return new Of<A>(future, WillTrace.sample("of", future));
     }
 
     /**
@@ -81,7 +166,23 @@ public final class Wills {
      * @return Created Will
      */
     public static <A> Will<A> failedWill(@Nonnull Throwable throwable) {
-        return new Of<A>(Futures.<A>immediateFailedFuture(throwable));
+        ListenableFuture<A> future = Futures.immediateFailedFuture(throwable);
+        return new Of<A>(future, WillTrace.sample("failedWill", future));
+    }
+
+    /**
+     * Creates {@link Will} which doesn't start any work until it is observed.
+     * Provided supplier is called exactly once, on first {@link Will#obtain()}, callback registration
+     * or creation of another Will on top of this one (map, flatMap, when, etc).
+     * Useful for fallbacks and other branches whose result may never be consumed
+     *
+     * @param supplier Factory of Will
+     * @param <A>      Type of Will
+     * @return Lazy Will
+     */
+    public static <A> Will<A> lazy(@Nonnull Callable<? extends ListenableFuture<A>> supplier) {
+        SettableFuture<A> future = SettableFuture.create();
+        return new Lazy<A>(future, supplier, WillTrace.sample("lazy", future));
     }
 
     /**
@@ -92,7 +193,7 @@ public final class Wills {
      * @return Created Will
      */
     public static <A> Will<A> forListenableFuture(ListenableFuture<A> future) {
-        return new Of<A>(future);
+        return new Of<A>(future, WillTrace.sample("forListenableFuture", future));
     }
 
 
@@ -104,10 +205,23 @@ public final class Wills {
      * @return Created Will
      */
     public static <A> Will<A> forFuture(Future<A> future) {
-        return new Of<A>(JdkFutureAdapters.listenInPoolThread(future));
+        ListenableFuture<A> listenable = JdkFutureAdapters.listenInPoolThread(future);
+        return new Of<A>(listenable, WillTrace.sample("forFuture", listenable));
     }
 
 
+    /**
+     * Returns assembly trace of provided {@link Will}. Traces are collected only if tracing is enabled
+     * and the Will is sampled, see {@link WillTrace} for details
+     *
+     * @param will Will to get trace of
+     * @return Trace or NULL if Will isn't traced
+     */
+    @Nullable
+    public static WillTrace trace(@Nullable Will<?> will) {
+        return will instanceof Of ? ((Of<?>) will).trace : null;
+    }
+
     /**
      * Creates Guava's {@link com.google.common.util.concurrent.FutureCallback} from provided Actions
      *
@@ -154,15 +268,35 @@ public final class Wills {
         return futureCallback(Actions.<A>nothing(), action);
     }
 
+    @SuppressWarnings("unchecked")
+    private static <A> ListenableFuture<? extends A>[] toArray(Iterable<? extends Will<? extends A>> wills) {
+        Preconditions.checkNotNull(wills, "Wills shouldn't be null");
+        if (wills instanceof Collection) {
+            Collection<? extends Will<? extends A>> collection = (Collection<? extends Will<? extends A>>) wills;
+            return collection.toArray(new ListenableFuture[collection.size()]);
+        }
+        return Iterables.toArray(wills, ListenableFuture.class);
+    }
+
     /**
      * Default {@link Will} implementation
-     * Based on Guava's {@link com.google.common.util.concurrent.ForwardingListenableFuture.SimpleForwardingListenableFuture}
+     * Based on Guava's {@link com.google.common.util.concurrent.ForwardingListenableFuture}
      *
      * @param <A>
      */
-    private static final class Of<A> extends ForwardingListenableFuture.SimpleForwardingListenableFuture<A> implements Will<A> {
-        public Of(ListenableFuture<A> delegate) {
-            super(delegate);
+    private static class Of<A> extends ForwardingListenableFuture<A> implements Will<A> {
+
+        private final ListenableFuture<A> delegate;
+        private final WillTrace trace;
+
+        public Of(ListenableFuture<A> delegate, @Nullable WillTrace trace) {
+            this.delegate = Preconditions.checkNotNull(delegate, "Delegate shouldn't be null");
+            this.trace = trace;
+        }
+
+        @Override
+        protected ListenableFuture<A> delegate() {
+            return delegate;
         }
 
 
@@ -215,12 +349,14 @@ public final class Wills {
 
         @Override
         public <R> Will<R> map(@Nonnull Function<? super A, ? extends R> function) {
-            return forListenableFuture(Futures.transform(this, function));
+            ListenableFuture<R> future = Futures.transform(this, function);
+            return new Of<R>(future, WillTrace.sample("map", future, this));
         }
 
         @Override
         public Will<A> replaceFailed(AsyncFunction<Throwable, ? extends A> fallback) {
-            return new Of<A>(Futures.catchingAsync(delegate(),Throwable.class, fallback));
+            ListenableFuture<A> future = Futures.catchingAsync(delegate(), Throwable.class, fallback);
+            return new Of<A>(future, WillTrace.sample("replaceFailed", future, this));
         }
 
         @Override
@@ -238,6 +374,11 @@ public final class Wills {
             return replaceFailed((ListenableFuture<A>) future);
         }
 
+        @Override
+        public Will<A> replaceFailed(@Nonnull Callable<Will<A>> fallback) {
+            return replaceFailed(lazy(fallback));
+        }
+
         @Override
         public <B> Will<B> flatMap(final Function<? super A, Will<B>> f) {
             final SettableFuture<B> result = SettableFuture.create();
@@ -265,9 +406,71 @@ public final class Wills {
                     }
                 }
             }).whenFailed(failResult);
-            return new Of<B>(result);
+            return new Of<B>(result, WillTrace.sample("flatMap", result, this));
         }
 
 
     }
+
+    /**
+     * {@link Will} which doesn't call its supplier until it is observed: result obtained,
+     * callback registered or some another Will is created on top of it.
+     * Supplier is called exactly once, in the thread which observed the Will first
+     *
+     * @param <A>
+     */
+    private static final class Lazy<A> extends Of<A> {
+
+        private final AtomicReference<Callable<? extends ListenableFuture<A>>> supplier;
+
+        private Lazy(SettableFuture<A> result, Callable<? extends ListenableFuture<A>> supplier, @Nullable WillTrace trace) {
+            super(result, trace);
+            this.supplier = new AtomicReference<Callable<? extends ListenableFuture<A>>>(
+                    Preconditions.checkNotNull(supplier, "Supplier shouldn't be null"));
+        }
+
+        @Override
+        protected ListenableFuture<A> delegate() {
+            Callable<? extends ListenableFuture<A>> pending = supplier.get();
+            if (null != pending && supplier.compareAndSet(pending, null)) {
+                SettableFuture<A> result = result();
+                try {
+                    result.setFuture(Preconditions.checkNotNull(pending.call(), "Created Will shouldn't be null"));
+                } catch (Throwable e) {
+                    result.setException(e);
+                }
+            }
+            return super.delegate();
+        }
+
+        /* status checks and cancellation do not start the supplier */
+
+        @Override
+        public boolean isDone() {
+            return result().isDone();
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return result().isCancelled();
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = result().cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                supplier.set(null);
+            }
+            return cancelled;
+        }
+
+        @Override
+        public String toString() {
+            return result().toString();
+        }
+
+        private SettableFuture<A> result() {
+            return (SettableFuture<A>) super.delegate();
+        }
+    }
 }
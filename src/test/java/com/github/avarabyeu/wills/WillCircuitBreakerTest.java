@@ -0,0 +1,230 @@
+package com.github.avarabyeu.wills;
+
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.smarttested.qa.smartassert.junit.SoftAssertVerifier;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.smarttested.qa.smartassert.SmartAssert.assertHard;
+import static com.smarttested.qa.smartassert.SmartAssert.assertSoft;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+
+/**
+ * Tests {@link com.github.avarabyeu.wills.WillCircuitBreaker} functionality
+ *
+ * @author Andrei Varabyeu
+ */
+public class WillCircuitBreakerTest {
+
+    @Rule
+    public SoftAssertVerifier verifier = SoftAssertVerifier.instance();
+
+    private final FakeTicker ticker = new FakeTicker();
+
+    private final WillCircuitBreaker breaker = WillCircuitBreaker.builder()
+            .slidingWindowSize(4)
+            .minimumNumberOfCalls(4)
+            .failureRateThreshold(50)
+            .slowCallDuration(1, TimeUnit.SECONDS)
+            .slowCallRateThreshold(50)
+            .waitDurationInOpenState(10, TimeUnit.SECONDS)
+            .permittedCallsInHalfOpenState(2)
+            .maxWaitDurationInHalfOpenState(30, TimeUnit.SECONDS)
+            .ticker(ticker)
+            .build();
+
+    @Test
+    public void testOpensOnFailureRate() {
+        CountingSupplier successful = new CountingSupplier(Wills.of("OK"));
+        CountingSupplier failed = new CountingSupplier(Wills.<String>failedWill(new RuntimeException()));
+
+        breaker.call(successful);
+        breaker.call(successful);
+        breaker.call(failed);
+        assertSoft(breaker.getState(), is(WillCircuitBreaker.State.CLOSED), "Breaker is opened before minimum number of calls");
+
+        breaker.call(failed);
+        assertHard(breaker.getState(), is(WillCircuitBreaker.State.OPEN), "Breaker is not opened");
+
+        Will<String> rejected = breaker.call(successful);
+        assertSoft(successful.calls.get(), is(2), "Supplier is called by opened breaker");
+        assertSoft(failureOf(rejected), instanceOf(CircuitBreakerOpenException.class), "Incorrect fail fast exception");
+    }
+
+    @Test
+    public void testOpensOnSlowCallRate() {
+        Callable<Will<String>> slow = new Callable<Will<String>>() {
+            @Override
+            public Will<String> call() {
+                ticker.advance(2, TimeUnit.SECONDS);
+                return Wills.of("SLOW");
+            }
+        };
+        for (int i = 0; i < 4; i++) {
+            breaker.call(slow);
+        }
+        assertHard(breaker.getState(), is(WillCircuitBreaker.State.OPEN), "Breaker is not opened on slow calls");
+    }
+
+    @Test
+    public void testClosesAfterSuccessfulProbes() {
+        open();
+        ticker.advance(10, TimeUnit.SECONDS);
+
+        CountingSupplier successful = new CountingSupplier(Wills.of("OK"));
+        breaker.call(successful);
+        assertSoft(breaker.getState(), is(WillCircuitBreaker.State.HALF_OPEN), "Breaker is not half-opened");
+        breaker.call(successful);
+        assertSoft(breaker.getState(), is(WillCircuitBreaker.State.CLOSED), "Breaker is not closed after probes");
+        assertSoft(successful.calls.get(), is(2), "Probe calls are not performed");
+    }
+
+    @Test
+    public void testLimitsProbeCalls() {
+        open();
+        ticker.advance(10, TimeUnit.SECONDS);
+
+        /* probes which are never completed */
+        CountingSupplier pending = new CountingSupplier(Wills.forListenableFuture(SettableFuture.<String>create()));
+        breaker.call(pending);
+        breaker.call(pending);
+        Will<String> rejected = breaker.call(pending);
+
+        assertSoft(pending.calls.get(), is(2), "Number of probe calls is not limited");
+        assertSoft(failureOf(rejected), instanceOf(CircuitBreakerOpenException.class), "Incorrect fail fast exception");
+    }
+
+    @Test
+    public void testReopensOnFailedProbe() {
+        open();
+        ticker.advance(10, TimeUnit.SECONDS);
+
+        breaker.call(new CountingSupplier(Wills.<String>failedWill(new RuntimeException())));
+        assertHard(breaker.getState(), is(WillCircuitBreaker.State.OPEN), "Breaker is not reopened");
+    }
+
+    @Test
+    public void testReopensOnHungProbes() {
+        open();
+        ticker.advance(10, TimeUnit.SECONDS);
+
+        /* probes which are never completed */
+        CountingSupplier pending = new CountingSupplier(Wills.forListenableFuture(SettableFuture.<String>create()));
+        breaker.call(pending);
+        breaker.call(pending);
+        assertSoft(breaker.getState(), is(WillCircuitBreaker.State.HALF_OPEN), "Breaker is not half-opened");
+
+        ticker.advance(30, TimeUnit.SECONDS);
+        Will<String> rejected = breaker.call(pending);
+        assertSoft(failureOf(rejected), instanceOf(CircuitBreakerOpenException.class), "Incorrect fail fast exception");
+        assertHard(breaker.getState(), is(WillCircuitBreaker.State.OPEN), "Breaker is not reopened on hung probes");
+
+        ticker.advance(10, TimeUnit.SECONDS);
+        breaker.call(pending);
+        assertSoft(pending.calls.get(), is(3), "New probe call is not permitted");
+    }
+
+    @Test
+    public void testIgnoresCancelledCalls() {
+        SettableFuture<String> cancelled = SettableFuture.create();
+        cancelled.cancel(false);
+        CountingSupplier supplier = new CountingSupplier(Wills.forListenableFuture(cancelled));
+        for (int i = 0; i < 4; i++) {
+            breaker.call(supplier);
+        }
+        assertSoft(breaker.getState(), is(WillCircuitBreaker.State.CLOSED), "Breaker is opened on cancelled calls");
+
+        open();
+        ticker.advance(10, TimeUnit.SECONDS);
+        breaker.call(supplier);
+        breaker.call(supplier);
+        breaker.call(supplier);
+        assertSoft(supplier.calls.get(), is(7), "Permits of cancelled probes are not returned");
+        assertSoft(breaker.getState(), is(WillCircuitBreaker.State.HALF_OPEN), "Breaker state is changed by cancelled probes");
+    }
+
+    @Test
+    public void testExecutorDecorator() {
+        WillExecutorService executor = breaker.decorate(WillExecutors.willDecorator(MoreExecutors.newDirectExecutorService()));
+        try {
+            for (int i = 0; i < 4; i++) {
+                try {
+                    executor.submit(new Callable<String>() {
+                        @Override
+                        public String call() {
+                            throw new IllegalStateException();
+                        }
+                    }).obtain();
+                } catch (IllegalStateException e) {
+                    /* expected */
+                }
+            }
+            final AtomicInteger executed = new AtomicInteger();
+            Will<?> rejected = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    executed.incrementAndGet();
+                }
+            });
+            assertSoft(failureOf(rejected), instanceOf(CircuitBreakerOpenException.class), "Incorrect fail fast exception");
+            assertSoft(executed.get(), is(0), "Task is executed by opened breaker");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void open() {
+        CountingSupplier failed = new CountingSupplier(Wills.<String>failedWill(new RuntimeException()));
+        for (int i = 0; i < 4; i++) {
+            breaker.call(failed);
+        }
+        assertHard(breaker.getState(), is(WillCircuitBreaker.State.OPEN), "Breaker is not opened");
+    }
+
+    private static Throwable failureOf(Will<?> will) {
+        try {
+            will.obtain();
+        } catch (Throwable e) {
+            return e;
+        }
+        return null;
+    }
+
+    private static class CountingSupplier implements Callable<Will<String>> {
+
+        private final AtomicInteger calls = new AtomicInteger();
+        private final Will<String> will;
+
+        private CountingSupplier(Will<String> will) {
+            this.will = will;
+        }
+
+        @Override
+        public Will<String> call() {
+            calls.incrementAndGet();
+            return will;
+        }
+    }
+
+    private static class FakeTicker extends Ticker {
+
+        private final AtomicLong nanos = new AtomicLong();
+
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+
+        public void advance(long duration, TimeUnit unit) {
+            nanos.addAndGet(unit.toNanos(duration));
+        }
+    }
+}
@@ -1,10 +1,16 @@
 package com.github.avarabyeu.wills;
 
+import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.smarttested.qa.smartassert.SmartAssert;
 import org.junit.Test;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.CoreMatchers.is;
@@ -40,6 +46,135 @@ public class WillExecutorsTest {
 
     }
 
+    @Test
+    public void testRateLimited() {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            WillExecutorService willExecutorService = WillExecutors.rateLimited(MoreExecutors.listeningDecorator(pool), 20, 2);
+            DemoTask task = new DemoTask();
+
+            long started = System.nanoTime();
+            List<Will<?>> wills = Lists.newArrayList();
+            for (int i = 0; i < 6; i++) {
+                wills.add(willExecutorService.submit(task));
+            }
+            /* burst is executed right away, another tasks wait in queue */
+            SmartAssert.assertSoft(task.getCounter().get() <= 2, is(true), "Rate limit is exceeded");
+
+            Wills.when(wills).obtain();
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+            SmartAssert.assertSoft(task.getCounter().get(), is(6), "Queued tasks are not executed");
+            /* 4 tasks exceeding burst are released one per 50ms */
+            SmartAssert.assertSoft(elapsed >= 150, is(true), "Rate limit is exceeded");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRateLimitedQueueIsFull() {
+        ExecutorService pool = Executors.newFixedThreadPool(1);
+        try {
+            WillExecutorService willExecutorService = WillExecutors.rateLimited(MoreExecutors.listeningDecorator(pool), 1, 1, 1);
+            DemoTask task = new DemoTask();
+
+            willExecutorService.submit(task).obtain();
+            Will<?> queued = willExecutorService.submit(task);
+            Will<?> rejected = willExecutorService.submit(task);
+
+            SmartAssert.assertSoft(queued.isDone(), is(false), "Task exceeding rate limit is not queued");
+            try {
+                rejected.obtain();
+                SmartAssert.assertSoft(false, is(true), "Task exceeding queue size is not rejected");
+            } catch (RejectedExecutionException e) {
+                /* expected */
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRateLimitedByKey() {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            KeyedWillExecutor<String> executor = WillExecutors.rateLimitedByKey(MoreExecutors.listeningDecorator(pool), 1, 1, 10);
+            DemoTask task = new DemoTask();
+
+            /* each key has its own permit */
+            Wills.when(executor.submit("first", task), executor.submit("second", task)).obtain();
+            Will<?> limited = executor.submit("first", task);
+
+            SmartAssert.assertSoft(task.getCounter().get(), is(2), "Keys share rate limit");
+            SmartAssert.assertSoft(limited.isDone(), is(false), "Rate limit of key is exceeded");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRateLimitedShutdown() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            WillExecutorService willExecutorService = WillExecutors.rateLimited(MoreExecutors.listeningDecorator(pool), 20, 1);
+            final List<String> threads = Collections.synchronizedList(Lists.<String>newArrayList());
+            Runnable task = new Runnable() {
+                @Override
+                public void run() {
+                    threads.add(Thread.currentThread().getName());
+                }
+            };
+
+            List<Will<?>> wills = Lists.newArrayList();
+            for (int i = 0; i < 3; i++) {
+                wills.add(willExecutorService.submit(task));
+            }
+            willExecutorService.shutdown();
+            SmartAssert.assertSoft(willExecutorService.isShutdown(), is(true), "Executor is not shut down");
+            SmartAssert.assertSoft(pool.isShutdown(), is(false), "Delegate is shut down before queue is drained");
+
+            try {
+                willExecutorService.submit(task).obtain();
+                SmartAssert.assertSoft(false, is(true), "Task is accepted after shutdown");
+            } catch (RejectedExecutionException e) {
+                /* expected */
+            }
+
+            SmartAssert.assertHard(willExecutorService.awaitTermination(5, TimeUnit.SECONDS), is(true), "Executor is not terminated");
+            Wills.when(wills).obtain();
+            SmartAssert.assertSoft(threads.size(), is(3), "Queued tasks are not executed after shutdown");
+            SmartAssert.assertSoft(pool.isShutdown(), is(true), "Delegate is not shut down");
+            for (String thread : threads) {
+                SmartAssert.assertSoft(thread.startsWith("wills-timer"), is(false), "Task is executed by timer thread");
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRateLimitedDelegateRejects() {
+        ExecutorService pool = Executors.newFixedThreadPool(1);
+        try {
+            WillExecutorService willExecutorService = WillExecutors.rateLimited(MoreExecutors.listeningDecorator(pool), 10, 1);
+            DemoTask task = new DemoTask();
+
+            willExecutorService.submit(task).obtain();
+            Will<?> queued = willExecutorService.submit(task);
+            pool.shutdown();
+
+            try {
+                queued.obtain();
+                SmartAssert.assertSoft(false, is(true), "Task rejected by delegate is completed");
+            } catch (RejectedExecutionException e) {
+                /* expected */
+            }
+            SmartAssert.assertSoft(queued.isCancelled(), is(false), "Will of rejected task is cancelled instead of failed");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
 
     private static class DemoTask implements Runnable {
 
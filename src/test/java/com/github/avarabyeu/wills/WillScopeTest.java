@@ -0,0 +1,120 @@
+package com.github.avarabyeu.wills;
+
+import com.google.common.util.concurrent.SettableFuture;
+import com.smarttested.qa.smartassert.junit.SoftAssertVerifier;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.smarttested.qa.smartassert.SmartAssert.assertHard;
+import static com.smarttested.qa.smartassert.SmartAssert.assertSoft;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+
+/**
+ * Tests {@link com.github.avarabyeu.wills.WillScope} functionality
+ *
+ * @author Andrei Varabyeu
+ */
+public class WillScopeTest {
+
+    @Rule
+    public SoftAssertVerifier verifier = SoftAssertVerifier.instance();
+
+    @Test
+    public void testJoin() {
+        WillScope scope = WillScope.open();
+        try {
+            SettableFuture<String> future = SettableFuture.create();
+            scope.fork(Wills.of("first"));
+            scope.fork(Wills.forListenableFuture(future));
+
+            Will<Void> joined = scope.joinAll();
+            assertSoft(joined.isDone(), is(false), "Scope is joined before all Wills are completed");
+
+            future.set("second");
+            assertSoft(joined.isDone(), is(true), "Scope is not joined once all Wills are completed");
+        } finally {
+            scope.close();
+        }
+    }
+
+    @Test
+    public void testFirstFailureCancelsAnother() {
+        WillScope scope = WillScope.open();
+        try {
+            Will<String> pending = scope.fork(Wills.forListenableFuture(SettableFuture.<String>create()));
+            RuntimeException failure = new RuntimeException("failed");
+            scope.fork(Wills.<String>failedWill(failure));
+
+            assertSoft(pending.isCancelled(), is(true), "Outstanding Will is not cancelled on failure");
+            try {
+                scope.join();
+                assertSoft(false, is(true), "Failure is not propagated");
+            } catch (RuntimeException e) {
+                assertSoft(e, is(failure), "Incorrect failure is propagated");
+            }
+        } finally {
+            scope.close();
+        }
+    }
+
+    @Test
+    public void testCloseCancelsOutstanding() {
+        WillScope scope = WillScope.open();
+        Will<String> pending = scope.fork(Wills.forListenableFuture(SettableFuture.<String>create()));
+        Will<String> completed = scope.fork(Wills.of("completed"));
+        scope.close();
+
+        assertSoft(pending.isCancelled(), is(true), "Outstanding Will is not cancelled on close");
+        assertSoft(completed.isCancelled(), is(false), "Completed Will is cancelled on close");
+        try {
+            scope.fork(Wills.of("late"));
+            assertSoft(false, is(true), "Will is forked in closed scope");
+        } catch (IllegalStateException e) {
+            /* expected */
+        }
+    }
+
+    @Test
+    public void testDeadline() {
+        WillScope scope = WillScope.open(50, TimeUnit.MILLISECONDS);
+        try {
+            Will<String> pending = scope.fork(Wills.forListenableFuture(SettableFuture.<String>create()));
+            try {
+                scope.join();
+                assertSoft(false, is(true), "Deadline is not exceeded");
+            } catch (RuntimeException e) {
+                assertSoft(e.getCause(), instanceOf(TimeoutException.class), "Incorrect deadline failure");
+            }
+            assertHard(pending.isCancelled(), is(true), "Outstanding Will is not cancelled on deadline");
+        } finally {
+            scope.close();
+        }
+    }
+
+    @Test
+    public void testDeadlineDoesNotRetainCompletedScope() throws InterruptedException {
+        WeakReference<WillScope> reference = completedScope();
+        for (int i = 0; i < 50 && null != reference.get(); i++) {
+            System.gc();
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertSoft(reference.get(), nullValue(), "Completed scope is retained by its deadline");
+    }
+
+    private static WeakReference<WillScope> completedScope() {
+        WillScope scope = WillScope.open(1, TimeUnit.HOURS);
+        try {
+            scope.fork(Wills.of(new byte[1024]));
+            scope.join();
+        } finally {
+            scope.close();
+        }
+        return new WeakReference<WillScope>(scope);
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.avarabyeu.wills;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.SettableFuture;
+import com.smarttested.qa.smartassert.junit.SoftAssertVerifier;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.smarttested.qa.smartassert.SmartAssert.assertHard;
+import static com.smarttested.qa.smartassert.SmartAssert.assertSoft;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+
+/**
+ * Tests {@link com.github.avarabyeu.wills.WillTrace} functionality.
+ * Tracing is enabled for tests via surefire configuration
+ *
+ * @author Andrei Varabyeu
+ */
+public class WillTraceTest {
+
+    @Rule
+    public SoftAssertVerifier verifier = SoftAssertVerifier.instance();
+
+    private static final Function<String, String> TO_UPPER_CASE = new Function<String, String>() {
+        @Override
+        public String apply(String input) {
+            return input.toUpperCase();
+        }
+    };
+
+    @Test
+    public void testAssemblyPath() {
+        Will<String> will = Wills.of("test").map(TO_UPPER_CASE).replaceFailed(Wills.of("fallback"));
+        will.obtain();
+
+        WillTrace trace = Wills.trace(will);
+        assertHard(trace, notNullValue(), "Will is not traced");
+
+        List<WillTrace> path = trace.getAssemblyPath();
+        assertHard(path.size(), is(3), "Incorrect assembly path");
+        assertSoft(path.get(0).getStage(), is("of"), "Incorrect root stage");
+        assertSoft(path.get(1).getStage(), is("map"), "Incorrect stage");
+        assertSoft(path.get(2).getStage(), is("replaceFailed"), "Incorrect last stage");
+        assertSoft(trace.isCompleted(), is(true), "Trace is not completed");
+        assertSoft(trace.getAssemblySite(), notNullValue(), "Assembly site is not captured");
+    }
+
+    @Test
+    public void testCriticalPathOfWhen() throws InterruptedException {
+        SettableFuture<String> slow = SettableFuture.create();
+        Will<String> fast = Wills.of("fast");
+        Will<String> slowWill = Wills.forListenableFuture(slow).map(TO_UPPER_CASE);
+        Will<List<String>> when = Wills.when(fast, slowWill);
+
+        WillTrace trace = Wills.trace(when);
+        assertHard(trace, notNullValue(), "Will is not traced");
+        assertSoft(trace.getParents().size(), is(2), "Incorrect number of parents");
+        assertSoft(trace.isCompleted(), is(false), "Trace is completed before Will");
+
+        TimeUnit.MILLISECONDS.sleep(20);
+        slow.set("slow");
+
+        List<WillTrace> path = trace.getAssemblyPath();
+        assertHard(path.size(), is(3), "Incorrect assembly path");
+        assertSoft(path.get(0).getStage(), is("forListenableFuture"), "Critical path doesn't contain slow stage");
+        assertSoft(path.get(0).getDuration(TimeUnit.MILLISECONDS) >= 20, is(true), "Incorrect duration of slow stage");
+        assertSoft(path.get(2).getStage(), is("when"), "Incorrect last stage");
+        assertSoft(trace.toString().split("\n").length, is(3), "Incorrect timeline");
+    }
+
+    @Test
+    public void testWhenIteratesWillsOnce() {
+        final List<Will<String>> wills = Lists.newArrayList(Wills.of("first"), Wills.of("second"));
+        /* iterable which may be iterated only once */
+        Iterable<Will<String>> once = new Iterable<Will<String>>() {
+            private boolean iterated;
+
+            @Override
+            public Iterator<Will<String>> iterator() {
+                assertHard(iterated, is(false), "Wills are iterated twice");
+                iterated = true;
+                return wills.iterator();
+            }
+        };
+
+        WillTrace trace = Wills.trace(Wills.when(once));
+        assertHard(trace, notNullValue(), "Will is not traced");
+        assertSoft(trace.getParents().size(), is(2), "Incorrect number of parents");
+    }
+}
@@ -20,8 +20,10 @@ import com.google.common.base.Function;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.AsyncFunction;
 import com.google.common.util.concurrent.FutureFallback;
+import com.google.common.util.concurrent.ForwardingListenableFuture;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import com.smarttested.qa.smartassert.SmartAssert;
 import com.smarttested.qa.smartassert.junit.SoftAssertVerifier;
 import org.junit.Assert;
@@ -29,14 +31,24 @@ import org.junit.Rule;
 import org.junit.Test;
 
 import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.smarttested.qa.smartassert.SmartAssert.assertHard;
 import static com.smarttested.qa.smartassert.SmartAssert.assertSoft;
 import static org.hamcrest.CoreMatchers.hasItem;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
 
 /**
  * Tests {@link com.github.avarabyeu.wills.Will} functionality
@@ -153,4 +165,199 @@ public class WillsTest {
         Will<String> okWillListenableFuture = Wills.<String>failedWill(new RuntimeException()).replaceFailed(Futures.immediateFuture(ok));
         SmartAssert.assertSoft(okWillListenableFuture.obtain(), is(ok), "Failed Will is not replaced with ListenableFuture");
     }
+
+    @Test
+    public void testLazy() {
+        final AtomicInteger calls = new AtomicInteger();
+        Will<String> will = Wills.lazy(new Callable<Will<String>>() {
+            @Override
+            public Will<String> call() {
+                calls.incrementAndGet();
+                return Wills.of(TEST_STRING);
+            }
+        });
+
+        assertSoft(will.isDone(), is(false), "Lazy Will is started by status check");
+        assertSoft(calls.get(), is(0), "Lazy Will is started before observed");
+
+        Will<String> mapped = will.map(new Function<String, String>() {
+            @Override
+            public String apply(String input) {
+                return input.toUpperCase();
+            }
+        });
+        assertSoft(calls.get(), is(1), "Lazy Will is not started by combinator");
+        assertSoft(mapped.obtain(), is(TEST_STRING.toUpperCase()), "Incorrect lazy Will result");
+        assertSoft(will.obtain(), is(TEST_STRING), "Incorrect lazy Will result");
+        assertSoft(calls.get(), is(1), "Lazy Will supplier is called more than once");
+    }
+
+    @Test
+    public void testLazyCalledOnceConcurrently() throws InterruptedException {
+        final AtomicInteger calls = new AtomicInteger();
+        final Will<Integer> will = Wills.lazy(new Callable<Will<Integer>>() {
+            @Override
+            public Will<Integer> call() {
+                return Wills.of(calls.incrementAndGet());
+            }
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        final CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < 8; i++) {
+            executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    start.await();
+                    return will.obtain();
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        assertHard(calls.get(), is(1), "Lazy Will supplier is called more than once");
+    }
+
+    @Test
+    public void testLazyCancelled() {
+        final AtomicInteger calls = new AtomicInteger();
+        Will<String> will = Wills.lazy(new Callable<Will<String>>() {
+            @Override
+            public Will<String> call() {
+                calls.incrementAndGet();
+                return Wills.of(TEST_STRING);
+            }
+        });
+        will.cancel(false);
+        will.whenDone(Actions.<Boolean>nothing());
+
+        assertSoft(will.isCancelled(), is(true), "Lazy Will is not cancelled");
+        assertSoft(calls.get(), is(0), "Cancelled lazy Will supplier is called");
+    }
+
+    @Test
+    public void testReplaceFailedLazily() {
+        final AtomicInteger calls = new AtomicInteger();
+        Callable<Will<String>> fallback = new Callable<Will<String>>() {
+            @Override
+            public Will<String> call() {
+                calls.incrementAndGet();
+                return Wills.of("fallback");
+            }
+        };
+
+        Will<String> successful = Wills.of(TEST_STRING).replaceFailed(fallback);
+        assertSoft(successful.obtain(), is(TEST_STRING), "Successful Will is replaced");
+        assertSoft(calls.get(), is(0), "Fallback is created for successful Will");
+
+        Will<String> failed = Wills.<String>failedWill(new RuntimeException()).replaceFailed(fallback);
+        assertSoft(failed.obtain(), is("fallback"), "Failed Will is not replaced");
+        assertSoft(calls.get(), is(1), "Fallback is not created for failed Will");
+    }
+
+    @Test
+    public void testWhen() {
+        SettableFuture<String> second = SettableFuture.create();
+        Will<List<String>> when = Wills.when(Wills.of("first"), Wills.forListenableFuture(second), Wills.of("third"));
+        assertSoft(when.isDone(), is(false), "Will is completed before all inputs");
+
+        second.set("second");
+        assertSoft(when.obtain(), is(Arrays.asList("first", "second", "third")), "Incorrect order of results");
+        assertSoft(Wills.when(Collections.<Will<String>>emptyList()).obtain().isEmpty(), is(true), "Incorrect result of empty chain");
+    }
+
+    @Test
+    public void testWhenFailsFast() {
+        SettableFuture<String> pending = SettableFuture.create();
+        RuntimeException failure = new RuntimeException("failed");
+        Will<List<String>> when = Wills.when(Lists.<Will<String>>newArrayList(
+                Wills.forListenableFuture(pending), Wills.<String>failedWill(failure)));
+
+        assertHard(when.isDone(), is(true), "Will isn't failed on first failure");
+        try {
+            when.obtain();
+        } catch (RuntimeException e) {
+            assertSoft(e, is(failure), "Incorrect failure");
+        }
+
+        Will<Void> cancelled = Wills.whenVoid(Wills.forListenableFuture(pending));
+        cancelled.cancel(false);
+        assertSoft(pending.isCancelled(), is(true), "Cancellation is not propagated to inputs");
+    }
+
+    @Test
+    public void testWhenVoid() {
+        SettableFuture<String> pending = SettableFuture.create();
+        Will<Void> when = Wills.whenVoid(Wills.of(1), Wills.forListenableFuture(pending));
+        assertSoft(when.isDone(), is(false), "Will is completed before all inputs");
+
+        pending.set(TEST_STRING);
+        assertSoft(when.isDone(), is(true), "Will is not completed once all inputs are completed");
+    }
+
+    @Test
+    public void testWhenPrimitives() {
+        int[] ints = Wills.whenInts(Wills.of(1), Wills.of(2), Wills.of(3)).obtain();
+        assertSoft(Arrays.equals(ints, new int[]{1, 2, 3}), is(true), "Incorrect ints");
+
+        long[] longs = Wills.whenLongs(Lists.newArrayList(Wills.of(1L), Wills.of(Long.MAX_VALUE))).obtain();
+        assertSoft(Arrays.equals(longs, new long[]{1L, Long.MAX_VALUE}), is(true), "Incorrect longs");
+    }
+
+    @Test
+    public void testCancelledInputIsNotPropagated() {
+        SettableFuture<String> cancelled = SettableFuture.create();
+        SettableFuture<String> another = SettableFuture.create();
+        Will<List<String>> when = Wills.when(Wills.forListenableFuture(cancelled), Wills.forListenableFuture(another));
+
+        SettableFuture<String> cancelledVoid = SettableFuture.create();
+        SettableFuture<String> anotherVoid = SettableFuture.create();
+        Will<Void> whenVoid = Wills.whenVoid(Wills.forListenableFuture(cancelledVoid), Wills.forListenableFuture(anotherVoid));
+
+        cancelled.cancel(false);
+        cancelledVoid.cancel(false);
+
+        assertSoft(when.isCancelled(), is(true), "Aggregate is not cancelled with input");
+        assertSoft(another.isCancelled(), is(false), "Cancellation of input is propagated to another input");
+        assertSoft(whenVoid.isCancelled(), is(true), "Aggregate is not cancelled with input");
+        assertSoft(anotherVoid.isCancelled(), is(false), "Cancellation of input is propagated to another input");
+    }
+
+    @Test
+    public void testCancelledAggregateIsPropagated() {
+        SettableFuture<String> first = SettableFuture.create();
+        SettableFuture<String> second = SettableFuture.create();
+        Wills.when(Wills.forListenableFuture(first), Wills.forListenableFuture(second)).cancel(false);
+
+        assertSoft(first.isCancelled(), is(true), "Cancellation of aggregate is not propagated to input");
+        assertSoft(second.isCancelled(), is(true), "Cancellation of aggregate is not propagated to input");
+    }
+
+    @Test
+    public void testWhenChecksNullsBeforeListening() {
+        final AtomicInteger listeners = new AtomicInteger();
+        ListenableFuture<String> listened = new ForwardingListenableFuture.SimpleForwardingListenableFuture<String>(
+                SettableFuture.<String>create()) {
+            @Override
+            public void addListener(Runnable listener, Executor executor) {
+                listeners.incrementAndGet();
+                super.addListener(listener, executor);
+            }
+        };
+        try {
+            Wills.when(Wills.forListenableFuture(listened), null);
+            assertSoft(false, is(true), "NULL Will is accepted");
+        } catch (NullPointerException e) {
+            /* expected */
+        }
+        assertSoft(listeners.get(), is(0), "Listener is registered before all Wills are checked");
+    }
+
+    @Test
+    public void testTracingIsDisabledByDefault() {
+        assertSoft(WillTrace.isEnabled(), is(false), "Tracing is enabled by default");
+        assertSoft(Wills.trace(Wills.of("not traced")), nullValue(), "Will is traced by default");
+    }
 }
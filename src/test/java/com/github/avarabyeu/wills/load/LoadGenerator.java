@@ -0,0 +1,338 @@
+package com.github.avarabyeu.wills.load;
+
+import com.github.avarabyeu.wills.Action;
+import com.github.avarabyeu.wills.CircuitBreakerOpenException;
+import com.github.avarabyeu.wills.Will;
+import com.github.avarabyeu.wills.WillCircuitBreaker;
+import com.github.avarabyeu.wills.WillExecutorService;
+import com.github.avarabyeu.wills.WillExecutors;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load generator for {@link com.github.avarabyeu.wills.WillExecutorService} implementations.
+ * <p>
+ * Submits tasks at fixed arrival rate regardless of how fast executor completes them, and records latency
+ * from the <b>intended</b> start time of each task, so stalls of executor are not hidden by generator
+ * waiting for it (coordinated omission). Latencies of successful and failed tasks are recorded separately,
+ * so fast failures of saturated executor (open circuit breaker, for example) do not make it look faster.
+ * Tasks rejected by executor, either by exception or by failed Will, are counted only.
+ * Latency percentiles of each workload are printed once test is finished, full HDR percentile distributions
+ * are stored to <b>target/load-test/{workload}.hgrm</b> and <b>target/load-test/{workload}-failed.hgrm</b>.
+ * <p>
+ * Configured with system properties:
+ * <ul>
+ * <li>load.rate - tasks per second, 1000 by default</li>
+ * <li>load.duration - duration of measurement in seconds, 30 by default</li>
+ * <li>load.warmup - duration of warmup in seconds, 5 by default</li>
+ * <li>load.mix - weights of workloads, "cpu:60,blocking:30,chained:10" by default</li>
+ * <li>load.cpu.micros - duration of CPU workload, 50 by default</li>
+ * <li>load.blocking.millis - duration of blocking workload, 5 by default</li>
+ * <li>load.executor - pool type: fixed or cached, fixed by default</li>
+ * <li>load.threads - number of threads of fixed pool, number of processors by default</li>
+ * <li>load.rateLimit - decorates pool with rate limiter of provided permits per second, disabled by default</li>
+ * <li>load.circuitBreaker - decorates pool with circuit breaker, false by default</li>
+ * </ul>
+ * Usage: mvn -Pload-test test-compile exec:java -Dload.rate=2000 -Dload.executor=cached
+ *
+ * @author Andrei Varabyeu
+ */
+public final class LoadGenerator {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+    private final Settings settings;
+    private final WillExecutorService executor;
+    private final Map<Workload, Recording> recordings = Maps.newEnumMap(Workload.class);
+    private final AtomicLong inFlight = new AtomicLong();
+
+    private LoadGenerator(Settings settings, WillExecutorService executor) {
+        this.settings = settings;
+        this.executor = executor;
+        for (Workload workload : settings.mix.keySet()) {
+            recordings.put(workload, new Recording());
+        }
+    }
+
+    public static void main(String... args) throws Exception {
+        Settings settings = Settings.fromSystemProperties();
+        WillExecutorService executor = createExecutor(settings);
+        try {
+            System.out.println("Running load test: " + settings);
+            LoadGenerator generator = new LoadGenerator(settings, executor);
+            generator.run();
+            generator.report(System.out);
+            generator.store(new File("target/load-test"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static WillExecutorService createExecutor(Settings settings) {
+        ExecutorService pool;
+        if ("cached".equals(settings.executor)) {
+            pool = Executors.newCachedThreadPool();
+        } else if ("fixed".equals(settings.executor)) {
+            pool = Executors.newFixedThreadPool(settings.threads);
+        } else {
+            throw new IllegalArgumentException("Unknown executor type: " + settings.executor);
+        }
+
+        WillExecutorService executor = WillExecutors.willDecorator(pool);
+        if (settings.rateLimit > 0) {
+            executor = WillExecutors.rateLimited(executor, settings.rateLimit, Math.max(1, (int) (settings.rateLimit / 10)));
+        }
+        if (settings.circuitBreaker) {
+            executor = WillCircuitBreaker.create().decorate(executor);
+        }
+        return executor;
+    }
+
+    /**
+     * Submits tasks at fixed rate till the end of test and waits for in-flight tasks to complete
+     */
+    private void run() throws InterruptedException {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / settings.rate;
+        long startedAt = System.nanoTime();
+        long measureFrom = startedAt + TimeUnit.SECONDS.toNanos(settings.warmupSeconds);
+        long finishAt = measureFrom + TimeUnit.SECONDS.toNanos(settings.durationSeconds);
+        Random random = new Random(42);
+
+        for (long i = 0; ; i++) {
+            final long intendedStart = startedAt + i * intervalNanos;
+            if (intendedStart - finishAt >= 0) {
+                break;
+            }
+            long now;
+            while ((now = System.nanoTime()) - intendedStart < 0) {
+                LockSupport.parkNanos(intendedStart - now);
+            }
+
+            Workload workload = settings.pick(random);
+            final Recording recording = intendedStart - measureFrom >= 0 ? recordings.get(workload) : null;
+            inFlight.incrementAndGet();
+            try {
+                final Will<?> will = workload.submit(executor, settings);
+                will.whenDone(new Action<Boolean>() {
+                    @Override
+                    public void apply(Boolean successful) {
+                        if (null != recording) {
+                            recording.record(System.nanoTime() - intendedStart, successful ? null : failureOf(will));
+                        }
+                        inFlight.decrementAndGet();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                inFlight.decrementAndGet();
+                if (null != recording) {
+                    recording.record(System.nanoTime() - intendedStart, e);
+                }
+            }
+        }
+
+        long waitUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (inFlight.get() > 0 && System.nanoTime() - waitUntil < 0) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        if (inFlight.get() > 0) {
+            System.out.println("WARNING: " + inFlight.get() + " tasks are not completed in 30 seconds after test end");
+        }
+    }
+
+    private void report(PrintStream out) {
+        out.printf("%n%-10s %10s %10s %10s%n", "workload", "successful", "failed", "rejected");
+        for (Map.Entry<Workload, Recording> entry : recordings.entrySet()) {
+            Recording recording = entry.getValue();
+            out.printf("%-10s %10d %10d %10d%n", entry.getKey().name().toLowerCase(),
+                    recording.latencies.getTotalCount(), recording.failures.getTotalCount(), recording.rejections.get());
+        }
+
+        out.printf("%nSuccessful tasks");
+        reportLatencies(out, false);
+        out.printf("%nFailed tasks");
+        reportLatencies(out, true);
+        out.println("(latencies in microseconds, measured from intended start time)");
+    }
+
+    private void reportLatencies(PrintStream out, boolean failed) {
+        out.printf("%n%-10s", "workload");
+        for (double percentile : PERCENTILES) {
+            out.printf(" %10s", "p" + percentile);
+        }
+        out.printf(" %10s%n", "max");
+
+        for (Map.Entry<Workload, Recording> entry : recordings.entrySet()) {
+            Histogram histogram = failed ? entry.getValue().failures : entry.getValue().latencies;
+            out.printf("%-10s", entry.getKey().name().toLowerCase());
+            for (double percentile : PERCENTILES) {
+                out.printf(" %10s", micros(histogram.getValueAtPercentile(percentile)));
+            }
+            out.printf(" %10s%n", micros(histogram.getMaxValue()));
+        }
+    }
+
+    private void store(File directory) throws FileNotFoundException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalStateException("Unable to create directory " + directory);
+        }
+        for (Map.Entry<Workload, Recording> entry : recordings.entrySet()) {
+            String name = entry.getKey().name().toLowerCase();
+            store(entry.getValue().latencies, new File(directory, name + ".hgrm"));
+            store(entry.getValue().failures, new File(directory, name + "-failed.hgrm"));
+        }
+        System.out.println("HDR percentile distributions are stored to " + directory.getAbsolutePath());
+    }
+
+    private static void store(Histogram histogram, File file) throws FileNotFoundException {
+        PrintStream out = new PrintStream(file);
+        try {
+            /* in microseconds */
+            histogram.outputPercentileDistribution(out, 1000.0);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static Throwable failureOf(Future<?> future) {
+        try {
+            Uninterruptibles.getUninterruptibly(future);
+            return new IllegalStateException("Task is not failed");
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (CancellationException e) {
+            return e;
+        }
+    }
+
+    private static String micros(long nanos) {
+        return String.format("%.1f", nanos / 1000.0);
+    }
+
+    /**
+     * Latencies of successful and failed tasks of some workload and number of rejected ones.
+     * Rejections are not recorded as latencies: fail fast of saturated executor would hide its real latency
+     */
+    private static final class Recording {
+
+        private final Histogram latencies = new ConcurrentHistogram(3);
+        private final Histogram failures = new ConcurrentHistogram(3);
+        private final AtomicLong rejections = new AtomicLong();
+
+        private void record(long latencyNanos, @Nullable Throwable failure) {
+            if (null == failure) {
+                latencies.recordValue(latencyNanos);
+            } else if (failure instanceof RejectedExecutionException || failure instanceof CircuitBreakerOpenException) {
+                rejections.incrementAndGet();
+            } else {
+                failures.recordValue(latencyNanos);
+            }
+        }
+    }
+
+    /**
+     * Settings of load test
+     */
+    static final class Settings {
+
+        final long rate;
+        final long durationSeconds;
+        final long warmupSeconds;
+        final Map<Workload, Integer> mix;
+        final long cpuNanos;
+        final long blockingMillis;
+        final String executor;
+        final int threads;
+        final double rateLimit;
+        final boolean circuitBreaker;
+
+        private final int totalWeight;
+
+        private Settings(long rate, long durationSeconds, long warmupSeconds, Map<Workload, Integer> mix,
+                long cpuNanos, long blockingMillis, String executor, int threads, double rateLimit, boolean circuitBreaker) {
+            if (rate <= 0 || rate > TimeUnit.SECONDS.toNanos(1)) {
+                throw new IllegalArgumentException("Rate should be in (0, 1e9] range");
+            }
+            this.rate = rate;
+            this.durationSeconds = durationSeconds;
+            this.warmupSeconds = warmupSeconds;
+            this.mix = mix;
+            this.cpuNanos = cpuNanos;
+            this.blockingMillis = blockingMillis;
+            this.executor = executor;
+            this.threads = threads;
+            this.rateLimit = rateLimit;
+            this.circuitBreaker = circuitBreaker;
+
+            int total = 0;
+            for (Integer weight : mix.values()) {
+                total += weight;
+            }
+            if (total <= 0) {
+                throw new IllegalArgumentException("At least one workload should have positive weight");
+            }
+            this.totalWeight = total;
+        }
+
+        static Settings fromSystemProperties() {
+            Map<Workload, Integer> mix = Maps.newEnumMap(Workload.class);
+            for (Map.Entry<String, String> weight : Splitter.on(',').trimResults().omitEmptyStrings()
+                    .withKeyValueSeparator(':')
+                    .split(System.getProperty("load.mix", "cpu:60,blocking:30,chained:10")).entrySet()) {
+                mix.put(Workload.valueOf(weight.getKey().toUpperCase()), Integer.parseInt(weight.getValue()));
+            }
+            return new Settings(
+                    Long.getLong("load.rate", 1000),
+                    Long.getLong("load.duration", 30),
+                    Long.getLong("load.warmup", 5),
+                    mix,
+                    TimeUnit.MICROSECONDS.toNanos(Long.getLong("load.cpu.micros", 50)),
+                    Long.getLong("load.blocking.millis", 5),
+                    System.getProperty("load.executor", "fixed"),
+                    Integer.getInteger("load.threads", Runtime.getRuntime().availableProcessors()),
+                    Double.parseDouble(System.getProperty("load.rateLimit", "0")),
+                    Boolean.getBoolean("load.circuitBreaker"));
+        }
+
+        /**
+         * Picks workload randomly according to weights
+         */
+        Workload pick(Random random) {
+            int point = random.nextInt(totalWeight);
+            for (Map.Entry<Workload, Integer> weight : mix.entrySet()) {
+                point -= weight.getValue();
+                if (point < 0) {
+                    return weight.getKey();
+                }
+            }
+            throw new IllegalStateException("Workload is not picked");
+        }
+
+        @Override
+        public String toString() {
+            return "rate=" + rate + "/s, duration=" + durationSeconds + "s, warmup=" + warmupSeconds + "s, mix=" + mix
+                    + ", cpu=" + TimeUnit.NANOSECONDS.toMicros(cpuNanos) + "us, blocking=" + blockingMillis + "ms"
+                    + ", executor=" + executor + (("fixed".equals(executor)) ? "(" + threads + ")" : "")
+                    + (rateLimit > 0 ? ", rateLimit=" + rateLimit + "/s" : "")
+                    + (circuitBreaker ? ", circuitBreaker" : "");
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.github.avarabyeu.wills.load;
+
+import com.github.avarabyeu.wills.Action;
+import com.github.avarabyeu.wills.Will;
+import com.github.avarabyeu.wills.WillExecutorService;
+import com.google.common.base.Function;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kinds of work {@link LoadGenerator} submits to executor service
+ *
+ * @author Andrei Varabyeu
+ */
+enum Workload {
+
+    /**
+     * Burns CPU for configured time
+     */
+    CPU {
+        @Override
+        Will<?> submit(WillExecutorService executor, LoadGenerator.Settings settings) {
+            return executor.submit(new Spin(settings.cpuNanos));
+        }
+    },
+
+    /**
+     * Blocks pool thread for configured time, like a call to some remote service
+     */
+    BLOCKING {
+        @Override
+        Will<?> submit(WillExecutorService executor, final LoadGenerator.Settings settings) {
+            return executor.submit(new Callable<Long>() {
+                @Override
+                public Long call() throws Exception {
+                    TimeUnit.MILLISECONDS.sleep(settings.blockingMillis);
+                    return settings.blockingMillis;
+                }
+            });
+        }
+    },
+
+    /**
+     * Chain of two CPU tasks connected with map/flatMap and completed with callback
+     */
+    CHAINED {
+        @Override
+        Will<?> submit(final WillExecutorService executor, LoadGenerator.Settings settings) {
+            final long half = settings.cpuNanos / 2;
+            return executor.submit(new Spin(half))
+                    .map(new Function<Long, Long>() {
+                        @Override
+                        public Long apply(Long input) {
+                            return input + 1;
+                        }
+                    })
+                    .flatMap(new Function<Long, Will<Long>>() {
+                        @Override
+                        public Will<Long> apply(Long input) {
+                            return executor.submit(new Spin(half));
+                        }
+                    })
+                    .whenSuccessful(new Action<Long>() {
+                        @Override
+                        public void apply(Long result) {
+                            /* just a callback to be invoked */
+                        }
+                    });
+        }
+    };
+
+    /**
+     * Submits unit of work
+     *
+     * @param executor Executor service under test
+     * @param settings Load test settings
+     * @return Will of submitted work
+     */
+    abstract Will<?> submit(WillExecutorService executor, LoadGenerator.Settings settings);
+
+    /**
+     * Busy-spins for provided time
+     */
+    private static final class Spin implements Callable<Long> {
+
+        private final long nanos;
+
+        private Spin(long nanos) {
+            this.nanos = nanos;
+        }
+
+        @Override
+        public Long call() {
+            long iterations = 0;
+            long deadline = System.nanoTime() + nanos;
+            while (System.nanoTime() - deadline < 0) {
+                iterations++;
+            }
+            return iterations;
+        }
+    }
+}